@@ -0,0 +1,10 @@
+package searchengine.config;
+
+/**
+ * Analyzers of the chain a site is indexed and searched with.
+ */
+public enum Analyzer {
+    RUSSIAN,
+    ENGLISH,
+    ALPHANUMERIC
+}
@@ -0,0 +1,26 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawl-settings")
+public class CrawlSettings {
+    private double requestsPerSecond = 10;
+    private int burst = 5;
+    private boolean respectCrawlDelay = true;
+    private boolean incremental = true;
+    private int fetchConcurrency = 32;
+    private Duration fetchTimeout = Duration.ofSeconds(30);
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    private int parseQueueCapacity = 256;
+    private int persistThreads = 2;
+    private int persistQueueCapacity = 256;
+    private int persistBatchSize = 32;
+}
@@ -0,0 +1,33 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    private boolean inMemoryIndex;
+    private IndexBackend indexBackend = IndexBackend.DATABASE;
+    private String segmentDirectory = "index";
+    private int segmentMergeFactor = 8;
+    private int searchThreads = Runtime.getRuntime().availableProcessors();
+    private long resultCacheSize = 1000;
+    private Duration resultCacheTtl = Duration.ofMinutes(10);
+    private int titleBoost = 3;
+    private int descriptionBoost = 2;
+    private double bm25K1 = 1.2;
+    private double bm25B = 0.75;
+    private double frequentLemmaShare = 0.8;
+    private int fuzzyMaxEdits = 2;
+    private boolean migratePageColumns;
+
+    public enum IndexBackend {
+        DATABASE, SEGMENTS
+    }
+}
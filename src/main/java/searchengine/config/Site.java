@@ -3,9 +3,12 @@ package searchengine.config;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
 @Setter
 @Getter
 public class Site {
     private String url;
     private String name;
+    private List<Analyzer> analyzers = List.of(Analyzer.RUSSIAN);
 }
@@ -5,6 +5,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.indexing.IndexingResponse;
 import searchengine.dto.search.SearchResponse;
+import searchengine.dto.search.SuggestResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.IndexingService;
 import searchengine.services.SearchService;
@@ -43,7 +44,16 @@ public class ApiController {
 
     @GetMapping("/search")
     public ResponseEntity<SearchResponse> search (@RequestParam String query,
-                                                  @RequestParam(name="site", required=false, defaultValue="") String url) {
-        return ResponseEntity.ok(searchService.startSearch(query, url));
+                                                  @RequestParam(name="site", required=false, defaultValue="") String url,
+                                                  @RequestParam(required=false, defaultValue="0") int offset,
+                                                  @RequestParam(required=false, defaultValue="20") int limit) {
+        return ResponseEntity.ok(searchService.startSearch(query, url, offset, limit));
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<SuggestResponse> suggest (@RequestParam String query,
+                                                    @RequestParam(name="site", required=false, defaultValue="") String url,
+                                                    @RequestParam(required=false, defaultValue="10") int limit) {
+        return ResponseEntity.ok(searchService.suggest(query, url, limit));
     }
 }
@@ -9,6 +9,6 @@ public class SearchData {
     private String uri;
     private String title;
     private String snippet;
-    private Integer relevance;
+    private Float relevance;
 
 }
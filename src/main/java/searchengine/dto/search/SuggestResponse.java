@@ -0,0 +1,14 @@
+package searchengine.dto.search;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SuggestResponse {
+    private boolean result;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+    private List<String> suggestions;
+}
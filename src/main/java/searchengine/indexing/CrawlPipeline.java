@@ -0,0 +1,376 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConnectionData;
+import searchengine.config.CrawlSettings;
+import searchengine.model.Site;
+import searchengine.repositories.PageVersion;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crawls sites in fetch, parse and persist stages connected by bounded queues.
+ */
+@Component
+@RequiredArgsConstructor
+public class CrawlPipeline {
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final CrawlSettings crawlSettings;
+    private final ConnectionData connectionData;
+    private final CrawlScheduler crawlScheduler;
+    private final SiteInformationAdder siteInformationAdder;
+    private final Logger logger = LogManager.getRootLogger();
+
+    private final DelayQueue<FetchTask> frontier = new DelayQueue<>();
+    private final AtomicInteger fetching = new AtomicInteger();
+    private final Set<SiteCrawl> crawls = ConcurrentHashMap.newKeySet();
+    private final List<Thread> workers = new ArrayList<>();
+    private HttpClient httpClient;
+    private Semaphore fetchPermits;
+    private BlockingQueue<FetchedPage> parseQueue;
+    private BlockingQueue<PersistTask> persistQueue;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        httpClient = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(crawlSettings.getFetchTimeout())
+                .build();
+        fetchPermits = new Semaphore(Math.max(1, crawlSettings.getFetchConcurrency()));
+        parseQueue = new ArrayBlockingQueue<>(Math.max(1, crawlSettings.getParseQueueCapacity()));
+        persistQueue = new ArrayBlockingQueue<>(Math.max(1, crawlSettings.getPersistQueueCapacity()));
+        running = true;
+        startWorker("crawl-fetch", this::fetch);
+        for (int i = 0; i < Math.max(1, crawlSettings.getParseThreads()); i++) {
+            startWorker("crawl-parse-" + i, this::parse);
+        }
+        for (int i = 0; i < Math.max(1, crawlSettings.getPersistThreads()); i++) {
+            startWorker("crawl-persist-" + i, this::persist);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * @return ids of the stored pages the crawl did not reach, none when it is canceled
+     */
+    public CompletableFuture<Set<Long>> crawl(Site site, String url) {
+        SiteCrawl crawl = new SiteCrawl(site, url, siteInformationAdder.getPageVersions(site));
+        crawls.add(crawl);
+        crawl.done.whenComplete((result, error) -> crawls.remove(crawl));
+        crawl.schedule(url);
+        return crawl.done;
+    }
+
+    public void cancel() {
+        crawls.forEach(crawl -> crawl.done.complete(Set.of()));
+        frontier.clear();
+        parseQueue.clear();
+        persistQueue.clear();
+        crawlScheduler.reset();
+    }
+
+    public int getFrontierSize() {
+        return frontier.size();
+    }
+
+    public int getFetching() {
+        return fetching.get();
+    }
+
+    public int getParseQueueSize() {
+        return parseQueue.size();
+    }
+
+    public int getPersistQueueSize() {
+        return persistQueue.size();
+    }
+
+    private void fetch() throws InterruptedException {
+        while (running) {
+            FetchTask task = frontier.take();
+            if (task.crawl.isCanceled()) {
+                continue;
+            }
+            fetchPermits.acquire();
+            fetching.incrementAndGet();
+            try {
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(task.url))
+                        .timeout(crawlSettings.getFetchTimeout())
+                        .header("User-Agent", connectionData.getUserAgent())
+                        .header("Referer", connectionData.getReferrer())
+                        .GET();
+                PageVersion version = task.crawl.getVersion(task.url);
+                if (version != null && version.getEtag() != null) {
+                    request.header("If-None-Match", version.getEtag());
+                }
+                if (version != null && version.getLastModified() != null) {
+                    request.header("If-Modified-Since", version.getLastModified());
+                }
+                httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                        .whenComplete((response, error) -> onFetched(task, response, error));
+            } catch (RuntimeException e) {
+                onFetched(task, null, e);
+            }
+        }
+    }
+
+    /**
+     * The fetch permit is released only after the page is queued.
+     */
+    private void onFetched(FetchTask task, HttpResponse<byte[]> response, Throwable error) {
+        try {
+            if (task.crawl.isCanceled()) {
+                return;
+            }
+            if (error != null) {
+                onPageError(task.crawl, task.url, error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+                return;
+            }
+            parseQueue.put(new FetchedPage(task, response));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fetching.decrementAndGet();
+            fetchPermits.release();
+        }
+    }
+
+    private void parse() throws InterruptedException {
+        while (running) {
+            FetchedPage fetchedPage = parseQueue.take();
+            SiteCrawl crawl = fetchedPage.task.crawl;
+            if (crawl.isCanceled()) {
+                continue;
+            }
+            try {
+                HttpResponse<byte[]> response = fetchedPage.response;
+                String url = fetchedPage.task.url;
+                PageVersion version = crawl.getVersion(url);
+                if (response.statusCode() == HTTP_NOT_MODIFIED && version != null) {
+                    scheduleLinks(crawl, url, Jsoup.parse(siteInformationAdder.getStoredContent(version), url));
+                    crawl.finish();
+                    continue;
+                }
+                Document document = parseDocument(response);
+                ParsedPage parsedPage = siteInformationAdder.parsePage(crawl.site, url, response.statusCode(), document,
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null), version);
+                scheduleLinks(crawl, url, document);
+                persistQueue.put(new PersistTask(crawl, parsedPage));
+            } catch (RuntimeException | IOException e) {
+                onPageError(crawl, fetchedPage.task.url, e);
+            }
+        }
+    }
+
+    /**
+     * Jsoup detects the charset when the Content-Type header has none.
+     */
+    private static Document parseDocument(HttpResponse<byte[]> response) throws IOException {
+        String charset = response.headers().firstValue("Content-Type")
+                .map(CrawlPipeline::getCharset)
+                .orElse(null);
+        return Jsoup.parse(new ByteArrayInputStream(response.body()), charset, response.uri().toString());
+    }
+
+    private static String getCharset(String contentType) {
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+                String charset = pair[1].trim().replace("\"", "");
+                try {
+                    return Charset.isSupported(charset) ? charset : null;
+                } catch (IllegalCharsetNameException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A page that is not fetched, parsed or saved is only logged, the site fails only when its root page does.
+     */
+    private void onPageError(SiteCrawl crawl, String url, Throwable error) {
+        try {
+            logger.warn("Page " + url + " is not indexed: " + error);
+            if (crawl.isRoot(url) && !crawl.isCanceled()) {
+                siteInformationAdder.addError(crawl.site, error instanceof Exception
+                        ? (Exception) error : new ExecutionException(error));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error of " + crawl.site.getUrl() + " is not saved: " + e.getMessage());
+        } finally {
+            crawl.finish();
+        }
+    }
+
+    private void scheduleLinks(SiteCrawl crawl, String url, Document document) {
+        for (Element element : document.select("a[href]")) {
+            if (crawl.isCanceled()) {
+                return;
+            }
+            String attributeUrl = SiteInformationAdder.getCorrectUrlFormat(element.absUrl("href"));
+            if (attributeUrl.startsWith(url) && !attributeUrl.contains("#")) {
+                crawl.schedule(attributeUrl);
+            }
+        }
+    }
+
+    private void persist() throws InterruptedException {
+        List<PersistTask> batch = new ArrayList<>();
+        while (running) {
+            batch.add(persistQueue.take());
+            persistQueue.drainTo(batch, Math.max(1, crawlSettings.getPersistBatchSize()) - 1);
+            Map<SiteCrawl, List<ParsedPage>> sitePages = new LinkedHashMap<>();
+            batch.forEach(task -> sitePages.computeIfAbsent(task.crawl, crawl -> new ArrayList<>()).add(task.page));
+            batch.clear();
+            sitePages.forEach(this::savePages);
+        }
+    }
+
+    private void savePages(SiteCrawl crawl, List<ParsedPage> pages) {
+        try {
+            if (!crawl.isCanceled()) {
+                siteInformationAdder.savePages(crawl.site, pages);
+            }
+        } catch (RuntimeException e) {
+            pages.forEach(page -> onPageError(crawl, crawl.site.getUrl() + page.path().substring(1), e));
+            return;
+        }
+        pages.forEach(page -> crawl.finish());
+    }
+
+    /**
+     * Every stage handles the errors of its tasks, a worker that still fails is logged and restarted.
+     */
+    private void startWorker(String name, Worker worker) {
+        Thread thread = new Thread(() -> {
+            while (running) {
+                try {
+                    worker.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    logger.error("Crawl worker " + name + " failed: " + e.getMessage());
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        workers.add(thread);
+        thread.start();
+    }
+
+    private interface Worker {
+        void run() throws InterruptedException;
+    }
+
+    private record FetchedPage(FetchTask task, HttpResponse<byte[]> response) {
+    }
+
+    private record PersistTask(SiteCrawl crawl, ParsedPage page) {
+    }
+
+    private static class FetchTask implements Delayed {
+        private final SiteCrawl crawl;
+        private final String url;
+        private final long readyAt;
+
+        FetchTask(SiteCrawl crawl, String url, long delay) {
+            this.crawl = crawl;
+            this.url = url;
+            this.readyAt = System.nanoTime() + delay;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((FetchTask) other).readyAt);
+        }
+    }
+
+    /**
+     * Pending counts the URLs scheduled but not yet saved or dropped.
+     */
+    private class SiteCrawl {
+        private final Site site;
+        private final String rootUrl;
+        private final Map<String, PageVersion> versions;
+        private final VisitedUrlSet visitedUrls = new VisitedUrlSet();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CompletableFuture<Set<Long>> done = new CompletableFuture<>();
+
+        SiteCrawl(Site site, String rootUrl, Map<String, PageVersion> versions) {
+            this.site = site;
+            this.rootUrl = rootUrl;
+            this.versions = versions;
+        }
+
+        boolean isRoot(String url) {
+            return rootUrl.equals(url);
+        }
+
+        PageVersion getVersion(String url) {
+            return versions.get(SiteInformationAdder.getPath(site, url));
+        }
+
+        boolean isCanceled() {
+            return done.isDone();
+        }
+
+        void schedule(String url) {
+            if (visitedUrls.add(url)) {
+                pending.incrementAndGet();
+                frontier.add(new FetchTask(this, url, crawlScheduler.reserve(url)));
+            }
+        }
+
+        void finish() {
+            if (pending.decrementAndGet() == 0) {
+                done.complete(getUnreachedPageIds());
+            }
+        }
+
+        private Set<Long> getUnreachedPageIds() {
+            Set<Long> pageIds = new HashSet<>();
+            versions.forEach((path, version) -> {
+                if (!visitedUrls.contains(site.getUrl() + path.substring(1))) {
+                    pageIds.add(version.getId());
+                }
+            });
+            return pageIds;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConnectionData;
+import searchengine.config.CrawlSettings;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket per host, slowed down to the Crawl-delay of robots.txt.
+ */
+@Component
+@RequiredArgsConstructor
+public class CrawlScheduler {
+
+    private final CrawlSettings crawlSettings;
+    private final ConnectionData connectionData;
+    private final Map<String, CompletableFuture<HostBucket>> hosts = new ConcurrentHashMap<>();
+    private final Logger logger = LogManager.getRootLogger();
+
+    /**
+     * @return nanoseconds to wait before the request may be sent
+     */
+    public long reserve(String url) {
+        String host = getHost(url);
+        CompletableFuture<HostBucket> bucket = hosts.get(host);
+        if (bucket == null) {
+            CompletableFuture<HostBucket> created = new CompletableFuture<>();
+            bucket = hosts.putIfAbsent(host, created);
+            if (bucket == null) {
+                bucket = created;
+                try {
+                    created.complete(createBucket(host));
+                } catch (RuntimeException e) {
+                    hosts.remove(host, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        return bucket.join().reserve();
+    }
+
+    /**
+     * Drops the buckets with the slots reserved by a canceled crawl, so the next crawl does not wait for them.
+     */
+    public void reset() {
+        hosts.clear();
+    }
+
+    private HostBucket createBucket(String host) {
+        double requestsPerSecond = crawlSettings.getRequestsPerSecond();
+        double capacity = Math.max(1, crawlSettings.getBurst());
+        if (crawlSettings.isRespectCrawlDelay()) {
+            double crawlDelay = getCrawlDelay(host);
+            if (crawlDelay > 0 && 1 / crawlDelay < requestsPerSecond) {
+                requestsPerSecond = 1 / crawlDelay;
+                capacity = 1;
+            }
+        }
+        return new HostBucket(TimeUnit.SECONDS.toNanos(1) / requestsPerSecond, capacity);
+    }
+
+    private static String getHost(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host == null ? "" : host;
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+
+    private double getCrawlDelay(String host) {
+        try {
+            Connection.Response response = Jsoup.connect("https://" + host + "/robots.txt")
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    .userAgent(connectionData.getUserAgent())
+                    .execute();
+            if (response.statusCode() >= 400) {
+                return 0;
+            }
+            return parseCrawlDelay(response.body());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("robots.txt of " + host + " is not available: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static double parseCrawlDelay(String robots) {
+        boolean anyAgentGroup = false;
+        boolean previousLineWasAgent = false;
+        for (String line : robots.split("\n")) {
+            int comment = line.indexOf('#');
+            String rule = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            int colon = rule.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = rule.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = rule.substring(colon + 1).trim();
+            if (field.equals("user-agent")) {
+                anyAgentGroup = (previousLineWasAgent && anyAgentGroup) || value.equals("*");
+                previousLineWasAgent = true;
+                continue;
+            }
+            previousLineWasAgent = false;
+            if (anyAgentGroup && field.equals("crawl-delay")) {
+                try {
+                    return Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static class HostBucket {
+        private final double nanosPerToken;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        HostBucket(double nanosPerToken, double capacity) {
+            this.nanosPerToken = nanosPerToken;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized long reserve() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+            lastRefill = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens * nanosPerToken);
+        }
+    }
+}
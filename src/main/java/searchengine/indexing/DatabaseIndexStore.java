@@ -0,0 +1,56 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.repositories.IndexBatchRepository;
+import searchengine.repositories.IndexBatchRepository.IndexedLemma;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps postings as index_table rows, served from the in-memory inverted index when it is enabled.
+ */
+@Component
+@ConditionalOnProperty(prefix = "search-settings", name = "index-backend", havingValue = "database", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DatabaseIndexStore implements IndexStore {
+
+    private final IndexBatchRepository indexBatchRepository;
+    private final InvertedIndex invertedIndex;
+
+    @Override
+    public PostingList getPostings(Site site, long lemmaId) {
+        return invertedIndex.getPostings(site, lemmaId);
+    }
+
+    @Override
+    public Map<Long, Map<String, IndexedLemma>> findPageLemmas(Site site, Collection<Long> pageIds) {
+        return indexBatchRepository.findPageLemmas(pageIds);
+    }
+
+    @Override
+    public void addPages(Site site, Map<Long, Map<Long, Integer>> pageLemmaRanks) {
+        indexBatchRepository.insertIndexes(pageLemmaRanks);
+        pageLemmaRanks.forEach((pageId, lemmaRanks) -> invertedIndex.addPage(site, pageId, lemmaRanks));
+    }
+
+    @Override
+    public void updatePages(Site site, Map<Long, List<Long>> removedLemmaIds,
+                            Map<Long, Map<Long, Integer>> changedRanks, Map<Long, Map<Long, Integer>> addedRanks) {
+        indexBatchRepository.deleteIndexes(removedLemmaIds);
+        indexBatchRepository.updateIndexes(changedRanks);
+        indexBatchRepository.insertIndexes(addedRanks);
+        invertedIndex.removePostings(site, removedLemmaIds);
+        changedRanks.forEach((pageId, lemmaRanks) -> invertedIndex.addPage(site, pageId, lemmaRanks));
+        addedRanks.forEach((pageId, lemmaRanks) -> invertedIndex.addPage(site, pageId, lemmaRanks));
+    }
+
+    @Override
+    public void removeSite(Site site) {
+        invertedIndex.removeSite(site);
+    }
+}
@@ -0,0 +1,51 @@
+package searchengine.indexing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+@Component
+public class EnglishLemmaFinder {
+    private static final int WORD_CACHE_SIZE = 100_000;
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "the", "and", "or", "but", "if", "of",
+            "to", "in", "on", "at", "by", "for", "with", "from", "as", "into", "than", "so", "not", "no");
+    private final LuceneMorphology luceneMorphology;
+    private final Cache<String, List<String>> wordCache = Caffeine.newBuilder()
+            .maximumSize(WORD_CACHE_SIZE)
+            .recordStats()
+            .build();
+
+    public EnglishLemmaFinder() throws IOException {
+        this.luceneMorphology = new EnglishLuceneMorphology();
+    }
+
+    /**
+     * @return normal forms of a lower-case a-z word, empty for stop words
+     */
+    public List<String> getNormalForms(String word) {
+        return wordCache.get(word, this::analyzeWord);
+    }
+
+    public CacheStats getCacheStats() {
+        return wordCache.stats();
+    }
+
+    public long getCacheSize() {
+        return wordCache.estimatedSize();
+    }
+
+    private List<String> analyzeWord(String word) {
+        if (STOP_WORDS.contains(word)) {
+            return List.of();
+        }
+        List<String> normalForms = luceneMorphology.getNormalForms(word);
+        return normalForms.isEmpty() ? List.of(word) : List.copyOf(normalForms);
+    }
+}
@@ -0,0 +1,26 @@
+package searchengine.indexing;
+
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-site counter incremented whenever pages of the site change.
+ */
+@Component
+public class IndexGeneration {
+
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public long get(Site site) {
+        AtomicLong generation = generations.get(site.getId());
+        return generation == null ? 0 : generation.get();
+    }
+
+    public void increment(Site site) {
+        generations.computeIfAbsent(site.getId(), id -> new AtomicLong()).incrementAndGet();
+    }
+}
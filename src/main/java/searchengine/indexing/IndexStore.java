@@ -0,0 +1,31 @@
+package searchengine.indexing;
+
+import searchengine.model.Site;
+import searchengine.repositories.IndexBatchRepository.IndexedLemma;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of the page postings, selected by search-settings.index-backend.
+ */
+public interface IndexStore {
+
+    PostingList getPostings(Site site, long lemmaId);
+
+    /**
+     * @return lemmas of every given page by lemma text
+     */
+    Map<Long, Map<String, IndexedLemma>> findPageLemmas(Site site, Collection<Long> pageIds);
+
+    void addPages(Site site, Map<Long, Map<Long, Integer>> pageLemmaRanks);
+
+    /**
+     * Applies the lemma diff of already indexed pages.
+     */
+    void updatePages(Site site, Map<Long, List<Long>> removedLemmaIds,
+                     Map<Long, Map<Long, Integer>> changedRanks, Map<Long, Map<Long, Integer>> addedRanks);
+
+    void removeSite(Site site);
+}
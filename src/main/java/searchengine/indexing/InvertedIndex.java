@@ -0,0 +1,103 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.Site;
+
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex {
+
+    private static final String LOAD_QUERY = "SELECT l.site_id, i.lemma_id, i.page_id, i.index_rank " +
+            "FROM index_table i JOIN lemma l ON l.id = i.lemma_id";
+    private static final String LEMMA_QUERY = "SELECT page_id, index_rank FROM index_table " +
+            "WHERE lemma_id = ? ORDER BY page_id";
+
+    private final SearchSettings searchSettings;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, Map<Long, PostingList>> sitePostings = new ConcurrentHashMap<>();
+    private final Logger logger = LogManager.getRootLogger();
+
+    @PostConstruct
+    public void load() {
+        if (!isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(LOAD_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);
+            return statement;
+        }, (RowCallbackHandler) resultSet -> getOrCreate(resultSet.getLong(1), resultSet.getLong(2))
+                .add(resultSet.getInt(3), Math.round(resultSet.getFloat(4))));
+        logger.info("Inverted index loaded in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public boolean isEnabled() {
+        return searchSettings.isInMemoryIndex()
+                && searchSettings.getIndexBackend() == SearchSettings.IndexBackend.DATABASE;
+    }
+
+    public PostingList getPostings(Site site, long lemmaId) {
+        if (isEnabled()) {
+            Map<Long, PostingList> lemmaPostings = sitePostings.get(site.getId());
+            PostingList postingList = lemmaPostings == null ? null : lemmaPostings.get(lemmaId);
+            return postingList == null ? new PostingList() : postingList;
+        }
+        PostingList postingList = new PostingList();
+        jdbcTemplate.query(LEMMA_QUERY, (RowCallbackHandler) resultSet ->
+                postingList.add(resultSet.getInt(1), Math.round(resultSet.getFloat(2))), lemmaId);
+        return postingList;
+    }
+
+    public void addPage(Site site, long pageId, Map<Long, Integer> lemmaRanks) {
+        if (!isEnabled()) {
+            return;
+        }
+        lemmaRanks.forEach((lemmaId, rank) -> getOrCreate(site.getId(), lemmaId).add((int) pageId, rank));
+    }
+
+    /**
+     * Removes the postings of the given lemmas of every page, each posting list is rebuilt once.
+     */
+    public void removePostings(Site site, Map<Long, ? extends Collection<Long>> pageLemmaIds) {
+        Map<Long, PostingList> lemmaPostings = sitePostings.get(site.getId());
+        if (lemmaPostings == null) {
+            return;
+        }
+        Map<Long, List<Integer>> lemmaPageIds = new HashMap<>();
+        pageLemmaIds.forEach((pageId, lemmaIds) -> lemmaIds.forEach(lemmaId ->
+                lemmaPageIds.computeIfAbsent(lemmaId, id -> new ArrayList<>()).add(pageId.intValue())));
+        lemmaPageIds.forEach((lemmaId, pageIds) -> {
+            PostingList postingList = lemmaPostings.get(lemmaId);
+            if (postingList != null) {
+                postingList.removeAll(pageIds.stream().mapToInt(Integer::intValue).toArray());
+            }
+        });
+    }
+
+    public void removeSite(Site site) {
+        sitePostings.remove(site.getId());
+    }
+
+    private PostingList getOrCreate(long siteId, long lemmaId) {
+        return sitePostings.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(lemmaId, id -> new PostingList());
+    }
+}
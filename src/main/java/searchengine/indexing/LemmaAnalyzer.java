@@ -0,0 +1,108 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.Analyzer;
+import searchengine.config.SitesList;
+import searchengine.model.Site;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands every word of a text to the first analyzer of the site that takes it.
+ */
+@Component
+@RequiredArgsConstructor
+public class LemmaAnalyzer {
+
+    private static final int MIN_PASSTHROUGH_LENGTH = 2;
+    private static final Set<Analyzer> DEFAULT_ANALYZERS = Collections.unmodifiableSet(EnumSet.of(Analyzer.RUSSIAN));
+
+    private final RussianLemmaFinder russianLemmaFinder;
+    private final EnglishLemmaFinder englishLemmaFinder;
+    private final SitesList sitesList;
+    private final Map<String, Set<Analyzer>> siteAnalyzers = new ConcurrentHashMap<>();
+
+    /**
+     * @return analyzers configured for the site, only the Russian one for sites missing from the settings
+     */
+    public Set<Analyzer> getAnalyzers(Site site) {
+        return siteAnalyzers.computeIfAbsent(site.getUrl(), url -> sitesList.getSites().stream()
+                .filter(configSite -> SiteInformationAdder.getCorrectUrlFormat(configSite.getUrl()).equals(url))
+                .findFirst()
+                .filter(configSite -> configSite.getAnalyzers() != null && !configSite.getAnalyzers().isEmpty())
+                .map(configSite -> Collections.unmodifiableSet(EnumSet.copyOf(configSite.getAnalyzers())))
+                .orElse(DEFAULT_ANALYZERS));
+    }
+
+    public void tokenize(CharSequence text, Set<Analyzer> analyzers, WordTokenizer.TokenHandler handler) {
+        WordTokenizer.tokenize(text, hasLatin(analyzers), handler);
+    }
+
+    /**
+     * @return counts of the first normal form of every word the chain takes
+     */
+    public HashMap<String, Integer> collectLemmas(CharSequence text, Set<Analyzer> analyzers) {
+        WordCounter words = countWords(text, analyzers);
+        HashMap<String, Integer> lemmas = new HashMap<>();
+        words.forEach((word, count) -> {
+            List<String> normalForms = getNormalForms(word, analyzers);
+            if (!normalForms.isEmpty()) {
+                lemmas.merge(normalForms.get(0), count, Integer::sum);
+            }
+        });
+        return lemmas;
+    }
+
+    /**
+     * @return normal forms of every word of the text the chain takes
+     */
+    public List<Set<String>> getWordLemmaSets(CharSequence text, Set<Analyzer> analyzers) {
+        WordCounter words = countWords(text, analyzers);
+        List<Set<String>> lemmaSets = new ArrayList<>();
+        words.forEach((word, count) -> {
+            List<String> normalForms = getNormalForms(word, analyzers);
+            if (!normalForms.isEmpty()) {
+                lemmaSets.add(new LinkedHashSet<>(normalForms));
+            }
+        });
+        return lemmaSets;
+    }
+
+    /**
+     * @return normal forms of a lower-case token, empty when no analyzer of the chain takes it
+     */
+    public List<String> getNormalForms(String word, Set<Analyzer> analyzers) {
+        if (WordTokenizer.isCyrillic(word)) {
+            return analyzers.contains(Analyzer.RUSSIAN) ? russianLemmaFinder.getNormalForms(word) : List.of();
+        }
+        if (analyzers.contains(Analyzer.ENGLISH) && isLetters(word)) {
+            return englishLemmaFinder.getNormalForms(word);
+        }
+        if (analyzers.contains(Analyzer.ALPHANUMERIC) && word.length() >= MIN_PASSTHROUGH_LENGTH) {
+            return List.of(word);
+        }
+        return List.of();
+    }
+
+    private WordCounter countWords(CharSequence text, Set<Analyzer> analyzers) {
+        WordCounter words = new WordCounter();
+        tokenize(text, analyzers, words);
+        return words;
+    }
+
+    private static boolean hasLatin(Set<Analyzer> analyzers) {
+        return analyzers.contains(Analyzer.ENGLISH) || analyzers.contains(Analyzer.ALPHANUMERIC);
+    }
+
+    private static boolean isLetters(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            char letter = word.charAt(i);
+            if (letter < 'a' || letter > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
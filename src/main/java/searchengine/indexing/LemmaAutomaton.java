@@ -0,0 +1,303 @@
+package searchengine.indexing;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Minimal acyclic automaton over the lemma texts of a site, the arcs of state s are at firstArcs[s]..firstArcs[s + 1].
+ * A word is numbered by its lexicographic rank, the words below a state reached with rank base take the ranks
+ * base..base + wordCounts[s], and the frequencies by rank are kept in a max segment tree.
+ */
+public class LemmaAutomaton {
+
+    private static final Comparator<Candidate> MOST_FREQUENT =
+            Comparator.comparingInt(Candidate::frequency).reversed();
+
+    private final int[] firstArcs;
+    private final char[] labels;
+    private final int[] targets;
+    private final BitSet finalStates;
+    private final int root;
+    private final int[] wordCounts;
+    private final int[] arcOffsets;
+    private final int[] maxFrequencies;
+    private final int wordCount;
+
+    private LemmaAutomaton(int[] firstArcs, char[] labels, int[] targets, BitSet finalStates, int root,
+                           int[] frequencies) {
+        this.firstArcs = firstArcs;
+        this.labels = labels;
+        this.targets = targets;
+        this.finalStates = finalStates;
+        this.root = root;
+        this.wordCounts = new int[firstArcs.length - 1];
+        this.arcOffsets = new int[labels.length];
+        for (int state = 0; state < wordCounts.length; state++) {
+            int count = finalStates.get(state) ? 1 : 0;
+            for (int arc = firstArcs[state]; arc < firstArcs[state + 1]; arc++) {
+                arcOffsets[arc] = count;
+                count += wordCounts[targets[arc]];
+            }
+            wordCounts[state] = count;
+        }
+        this.wordCount = frequencies.length;
+        this.maxFrequencies = new int[2 * wordCount];
+        System.arraycopy(frequencies, 0, maxFrequencies, wordCount, wordCount);
+        for (int i = wordCount - 1; i > 0; i--) {
+            maxFrequencies[i] = Math.max(maxFrequencies[2 * i], maxFrequencies[2 * i + 1]);
+        }
+    }
+
+    /**
+     * @param frequencies ranking weight of every word
+     */
+    public static LemmaAutomaton build(Map<String, Integer> frequencies) {
+        SortedMap<String, Integer> sortedFrequencies = new TreeMap<>(frequencies);
+        sortedFrequencies.remove("");
+        Builder builder = new Builder();
+        sortedFrequencies.keySet().forEach(builder::add);
+        return builder.finish(sortedFrequencies.values().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public boolean contains(CharSequence word) {
+        int state = walk(word);
+        return state >= 0 && finalStates.get(state);
+    }
+
+    /**
+     * Walks best first, a state is expanded only while the largest frequency below it can still make the limit.
+     *
+     * @return at most limit words starting with the prefix, the most frequent first
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> words = new ArrayList<>();
+        int state = root;
+        int base = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int arc = findArc(state, prefix.charAt(i));
+            if (arc < 0) {
+                return words;
+            }
+            base += arcOffsets[arc];
+            state = targets[arc];
+        }
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(MOST_FREQUENT);
+        offer(candidates, prefix, state, base);
+        while (!candidates.isEmpty() && words.size() < limit) {
+            Candidate candidate = candidates.poll();
+            if (candidate.state() < 0) {
+                words.add(candidate.text());
+                continue;
+            }
+            if (finalStates.get(candidate.state())) {
+                candidates.add(new Candidate(candidate.text(), -1, candidate.base(),
+                        maxFrequencies[wordCount + candidate.base()]));
+            }
+            for (int arc = firstArcs[candidate.state()]; arc < firstArcs[candidate.state() + 1]; arc++) {
+                offer(candidates, candidate.text() + labels[arc], targets[arc], candidate.base() + arcOffsets[arc]);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Passes every word within maxEdits insertions, deletions or substitutions of the word to the consumer.
+     */
+    public void findSimilar(String word, int maxEdits, Consumer<Match> consumer) {
+        int[] row = new int[word.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        findSimilar(root, new StringBuilder(), word, row, maxEdits, consumer);
+    }
+
+    private int walk(CharSequence word) {
+        int state = root;
+        for (int i = 0; i < word.length() && state >= 0; i++) {
+            int arc = findArc(state, word.charAt(i));
+            state = arc < 0 ? -1 : targets[arc];
+        }
+        return state;
+    }
+
+    private int findArc(int state, char label) {
+        int low = firstArcs[state];
+        int high = firstArcs[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (labels[middle] < label) {
+                low = middle + 1;
+            } else if (labels[middle] > label) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private void offer(PriorityQueue<Candidate> candidates, String text, int state, int base) {
+        if (wordCounts[state] > 0) {
+            candidates.add(new Candidate(text, state, base, getMaxFrequency(base, base + wordCounts[state])));
+        }
+    }
+
+    private int getMaxFrequency(int from, int to) {
+        int max = 0;
+        for (from += wordCount, to += wordCount; from < to; from >>= 1, to >>= 1) {
+            if ((from & 1) == 1) {
+                max = Math.max(max, maxFrequencies[from++]);
+            }
+            if ((to & 1) == 1) {
+                max = Math.max(max, maxFrequencies[--to]);
+            }
+        }
+        return max;
+    }
+
+    private void findSimilar(int state, StringBuilder prefix, String word, int[] row, int maxEdits,
+                             Consumer<Match> consumer) {
+        if (finalStates.get(state) && row[word.length()] <= maxEdits) {
+            consumer.accept(new Match(prefix.toString(), row[word.length()]));
+        }
+        for (int arc = firstArcs[state]; arc < firstArcs[state + 1]; arc++) {
+            char label = labels[arc];
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for (int i = 1; i < next.length; i++) {
+                int substitution = row[i - 1] + (word.charAt(i - 1) == label ? 0 : 1);
+                next[i] = Math.min(substitution, Math.min(next[i - 1], row[i]) + 1);
+                min = Math.min(min, next[i]);
+            }
+            if (min <= maxEdits) {
+                prefix.append(label);
+                findSimilar(targets[arc], prefix, word, next, maxEdits, consumer);
+                prefix.setLength(prefix.length() - 1);
+            }
+        }
+    }
+
+    public record Match(String text, int distance) {
+    }
+
+    /**
+     * A word when state is -1, otherwise the words below the state with the largest frequency among them.
+     */
+    private record Candidate(String text, int state, int base, int frequency) {
+    }
+
+    /**
+     * Incremental construction from sorted words.
+     */
+    private static class Builder {
+        private final Node root = new Node();
+        private final Map<StateKey, Node> register = new HashMap<>();
+        private final List<Node> states = new ArrayList<>();
+
+        private void add(String word) {
+            if (word.isEmpty()) {
+                return;
+            }
+            Node state = root;
+            int common = 0;
+            while (common < word.length() && state.hasChildren() && state.lastLabel() == word.charAt(common)) {
+                state = state.lastChild();
+                common++;
+            }
+            if (state.hasChildren()) {
+                replaceOrRegister(state);
+            }
+            for (int i = common; i < word.length(); i++) {
+                Node next = new Node();
+                state.labels.append(word.charAt(i));
+                state.children.add(next);
+                state = next;
+            }
+            state.isFinal = true;
+        }
+
+        private void replaceOrRegister(Node state) {
+            Node child = state.lastChild();
+            if (child.hasChildren()) {
+                replaceOrRegister(child);
+            }
+            StateKey key = child.getKey();
+            Node registered = register.get(key);
+            if (registered != null) {
+                state.children.set(state.children.size() - 1, registered);
+            } else {
+                child.id = states.size();
+                states.add(child);
+                register.put(key, child);
+            }
+        }
+
+        private LemmaAutomaton finish(int[] frequencies) {
+            if (root.hasChildren()) {
+                replaceOrRegister(root);
+            }
+            root.id = states.size();
+            states.add(root);
+            int arcCount = states.stream().mapToInt(state -> state.children.size()).sum();
+            int[] firstArcs = new int[states.size() + 1];
+            char[] labels = new char[arcCount];
+            int[] targets = new int[arcCount];
+            BitSet finalStates = new BitSet(states.size());
+            int arc = 0;
+            for (Node state : states) {
+                firstArcs[state.id] = arc;
+                finalStates.set(state.id, state.isFinal);
+                for (int i = 0; i < state.children.size(); i++) {
+                    labels[arc] = state.labels.charAt(i);
+                    targets[arc++] = state.children.get(i).id;
+                }
+            }
+            firstArcs[states.size()] = arc;
+            return new LemmaAutomaton(firstArcs, labels, targets, finalStates, root.id, frequencies);
+        }
+    }
+
+    private static class Node {
+        private final StringBuilder labels = new StringBuilder();
+        private final List<Node> children = new ArrayList<>();
+        private boolean isFinal;
+        private int id = -1;
+
+        private boolean hasChildren() {
+            return !children.isEmpty();
+        }
+
+        private char lastLabel() {
+            return labels.charAt(labels.length() - 1);
+        }
+
+        private Node lastChild() {
+            return children.get(children.size() - 1);
+        }
+
+        private StateKey getKey() {
+            int[] childIds = new int[children.size()];
+            for (int i = 0; i < childIds.length; i++) {
+                childIds[i] = children.get(i).id;
+            }
+            return new StateKey(isFinal, labels.toString(), Arrays.hashCode(childIds), childIds);
+        }
+    }
+
+    /**
+     * Registered states are equal when they are final alike and have the same arcs to the same states.
+     */
+    private record StateKey(boolean isFinal, String labels, int childHash, int[] childIds) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey other && isFinal == other.isFinal && childHash == other.childHash
+                    && labels.equals(other.labels) && Arrays.equals(childIds, other.childIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(isFinal, labels, childHash);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.repositories.LemmaFrequency;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the lemma table by site and lemma text.
+ */
+@Component
+@RequiredArgsConstructor
+public class LemmaDictionary {
+
+    private static final String LOAD_QUERY = "SELECT site_id, id, text, frequency FROM lemma";
+    private static final long REBUILD_DELAY_MS = 1000;
+    private static final Comparator<LemmaFrequency> MOST_FREQUENT =
+            Comparator.comparing(LemmaFrequency::getFrequency).reversed();
+    private static final Comparator<Similar> CLOSEST = Comparator.comparingInt(Similar::distance)
+            .thenComparing(Similar::lemma, MOST_FREQUENT);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, SiteLemmas> siteLemmas = new ConcurrentHashMap<>();
+    private final Logger logger = LogManager.getRootLogger();
+    private final ScheduledExecutorService automatonExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    public void load() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(LOAD_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);
+            return statement;
+        }, (RowCallbackHandler) resultSet -> getLemmas(resultSet.getLong(1)).lemmas.put(resultSet.getString(3),
+                new Entry(resultSet.getLong(2), resultSet.getString(3), resultSet.getInt(4))));
+        logger.info("Lemma dictionary loaded in " + (System.currentTimeMillis() - start) + " ms");
+        siteLemmas.values().forEach(lemmas -> scheduleRebuild(lemmas, 0));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        automatonExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the lemma of the site or null if no page of the site contains it
+     */
+    public LemmaFrequency get(Site site, String text) {
+        SiteLemmas lemmas = siteLemmas.get(site.getId());
+        return lemmas == null ? null : lemmas.lemmas.get(text);
+    }
+
+    /**
+     * @return the most frequent lemmas of the site starting with the prefix by the frequencies of the last
+     * automaton build, none before the first build of the site
+     */
+    public List<LemmaFrequency> complete(Site site, String prefix, int limit) {
+        SiteLemmas lemmas = siteLemmas.get(site.getId());
+        LemmaAutomaton automaton = lemmas == null ? null : lemmas.automaton;
+        if (automaton == null || limit < 1) {
+            return List.of();
+        }
+        return automaton.complete(prefix, limit).stream()
+                .<LemmaFrequency>map(lemmas.lemmas::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * @return lemmas of the site within maxEdits edits of the text, closest and then most frequent first
+     */
+    public List<LemmaFrequency> findSimilar(Site site, String text, int maxEdits, int limit) {
+        SiteLemmas lemmas = siteLemmas.get(site.getId());
+        LemmaAutomaton automaton = lemmas == null ? null : lemmas.automaton;
+        if (automaton == null || maxEdits <= 0 || limit < 1) {
+            return List.of();
+        }
+        PriorityQueue<Similar> similar = new PriorityQueue<>(CLOSEST.reversed());
+        automaton.findSimilar(text, maxEdits, match -> {
+            LemmaFrequency lemma = lemmas.lemmas.get(match.text());
+            if (lemma != null) {
+                offer(similar, new Similar(lemma, match.distance()), limit);
+            }
+        });
+        return getSorted(similar).stream().map(Similar::lemma).toList();
+    }
+
+    /**
+     * Adds the given page counts to the frequencies, lemma ids are the ones returned by the upsert.
+     */
+    public void add(Site site, Map<String, Long> lemmaIds, Map<String, Integer> frequencies) {
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        SiteLemmas lemmas = getLemmas(site.getId());
+        frequencies.forEach((text, frequency) -> lemmas.lemmas.compute(text, (key, entry) -> entry == null
+                ? new Entry(lemmaIds.get(text), text, frequency)
+                : new Entry(entry.id, text, entry.frequency + frequency)));
+        lemmas.version.incrementAndGet();
+        scheduleRebuild(lemmas, REBUILD_DELAY_MS);
+    }
+
+    public void subtract(Site site, Map<String, Integer> frequencies) {
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        SiteLemmas lemmas = getLemmas(site.getId());
+        frequencies.forEach((text, frequency) -> lemmas.lemmas.computeIfPresent(text, (key, entry) ->
+                entry.frequency - frequency <= 0 ? null : new Entry(entry.id, text, entry.frequency - frequency)));
+        lemmas.version.incrementAndGet();
+        scheduleRebuild(lemmas, REBUILD_DELAY_MS);
+    }
+
+    public void removeSite(Site site) {
+        siteLemmas.remove(site.getId());
+    }
+
+    /**
+     * Keeps the best limit candidates, the head of the queue is the worst of them.
+     */
+    private static <T> void offer(PriorityQueue<T> best, T candidate, int limit) {
+        if (best.size() < limit) {
+            best.add(candidate);
+        } else if (best.comparator().compare(candidate, best.peek()) > 0) {
+            best.poll();
+            best.add(candidate);
+        }
+    }
+
+    private static <T> List<T> getSorted(PriorityQueue<T> best) {
+        List<T> sorted = new ArrayList<>(best);
+        sorted.sort(best.comparator().reversed());
+        return sorted;
+    }
+
+    private SiteLemmas getLemmas(long siteId) {
+        return siteLemmas.computeIfAbsent(siteId, id -> new SiteLemmas());
+    }
+
+    /**
+     * Builds the automaton of the site on the background thread, changes made while a build waits join it.
+     */
+    private void scheduleRebuild(SiteLemmas lemmas, long delay) {
+        if (!lemmas.rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        automatonExecutor.schedule(() -> {
+            lemmas.rebuilding.set(false);
+            try {
+                rebuild(lemmas);
+            } catch (RuntimeException e) {
+                logger.error("Lemma automaton build failed: " + e.getMessage());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void rebuild(SiteLemmas lemmas) {
+        long version = lemmas.version.get();
+        if (lemmas.automaton != null && lemmas.automatonVersion == version) {
+            return;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        lemmas.lemmas.forEach((text, entry) -> frequencies.put(text, entry.frequency));
+        LemmaAutomaton automaton = LemmaAutomaton.build(frequencies);
+        lemmas.automatonVersion = version;
+        lemmas.automaton = automaton;
+    }
+
+    private record Similar(LemmaFrequency lemma, int distance) {
+    }
+
+    private static final class SiteLemmas {
+        private final Map<String, Entry> lemmas = new ConcurrentHashMap<>();
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicBoolean rebuilding = new AtomicBoolean();
+        private volatile LemmaAutomaton automaton;
+        private volatile long automatonVersion;
+    }
+
+    private static final class Entry implements LemmaFrequency {
+        private final long id;
+        private final String text;
+        private final int frequency;
+
+        private Entry(long id, String text, int frequency) {
+            this.id = id;
+            this.text = text;
+            this.frequency = frequency;
+        }
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public Integer getFrequency() {
+            return frequency;
+        }
+    }
+}
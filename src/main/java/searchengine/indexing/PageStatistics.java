@@ -0,0 +1,160 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token counts of pages and per-site totals used by the BM25 scoring.
+ */
+@Component
+@RequiredArgsConstructor
+public class PageStatistics {
+
+    private static final String LOAD_QUERY = "SELECT p.site_id, p.id, COALESCE(p.token_count, " +
+            "(SELECT SUM(i.index_rank) FROM index_table i WHERE i.page_id = p.id), 0) FROM page p";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, SiteTotals> siteTotals = new ConcurrentHashMap<>();
+    private final Logger logger = LogManager.getRootLogger();
+
+    @PostConstruct
+    public void load() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(LOAD_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);
+            return statement;
+        }, (RowCallbackHandler) resultSet -> setPageLength(resultSet.getLong(1),
+                resultSet.getLong(2), resultSet.getInt(3)));
+        logger.info("Page statistics loaded in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public void setPageLength(Site site, long pageId, int length) {
+        setPageLength(site.getId(), pageId, length);
+    }
+
+    public int getPageLength(Site site, int pageId) {
+        SiteTotals totals = siteTotals.get(site.getId());
+        return totals == null ? 0 : totals.lengths.get(pageId);
+    }
+
+    public int getPageCount(Site site) {
+        SiteTotals totals = siteTotals.get(site.getId());
+        return totals == null ? 0 : totals.pages;
+    }
+
+    public double getAverageLength(Site site) {
+        SiteTotals totals = siteTotals.get(site.getId());
+        return totals == null || totals.pages == 0 ? 0 : (double) totals.length / totals.pages;
+    }
+
+    public synchronized void removeSite(Site site) {
+        siteTotals.remove(site.getId());
+    }
+
+    private synchronized void setPageLength(long siteId, long pageId, int length) {
+        SiteTotals totals = siteTotals.computeIfAbsent(siteId, id -> new SiteTotals());
+        int oldLength = totals.lengths.put((int) pageId, length);
+        totals.pages += (length > 0 ? 1 : 0) - (oldLength > 0 ? 1 : 0);
+        totals.length += length - oldLength;
+    }
+
+    private static class SiteTotals {
+        private final PageLengths lengths = new PageLengths();
+        private volatile int pages;
+        private volatile long length;
+    }
+
+    /**
+     * Written under the PageStatistics lock, read without locking.
+     */
+    private static class PageLengths {
+        private volatile Table table = new Table(new int[64], new int[64]);
+        private int size;
+
+        int get(int pageId) {
+            Table current = table;
+            int mask = current.pageIds.length - 1;
+            for (int slot = mix(pageId) & mask; current.pageIds[slot] != 0; slot = (slot + 1) & mask) {
+                if (current.pageIds[slot] == pageId) {
+                    return current.lengths[slot];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the previous length of the page
+         */
+        int put(int pageId, int length) {
+            Table current = table;
+            int mask = current.pageIds.length - 1;
+            int slot = mix(pageId) & mask;
+            while (current.pageIds[slot] != 0) {
+                if (current.pageIds[slot] == pageId) {
+                    int oldLength = current.lengths[slot];
+                    current.lengths[slot] = length;
+                    return oldLength;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            current.lengths[slot] = length;
+            current.pageIds[slot] = pageId;
+            if (++size * 2 > current.pageIds.length) {
+                resize(current);
+            }
+            return 0;
+        }
+
+        private void resize(Table current) {
+            int live = 0;
+            for (int i = 0; i < current.pageIds.length; i++) {
+                if (current.pageIds[i] != 0 && current.lengths[i] != 0) {
+                    live++;
+                }
+            }
+            int capacity = 64;
+            while (capacity < live * 4) {
+                capacity *= 2;
+            }
+            Table resized = new Table(new int[capacity], new int[capacity]);
+            int mask = capacity - 1;
+            for (int i = 0; i < current.pageIds.length; i++) {
+                if (current.pageIds[i] == 0 || current.lengths[i] == 0) {
+                    continue;
+                }
+                int slot = mix(current.pageIds[i]) & mask;
+                while (resized.pageIds[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                resized.pageIds[slot] = current.pageIds[i];
+                resized.lengths[slot] = current.lengths[i];
+            }
+            size = live;
+            table = resized;
+        }
+
+        private static int mix(int pageId) {
+            int hash = pageId * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private record Table(int[] pageIds, int[] lengths) {
+    }
+}
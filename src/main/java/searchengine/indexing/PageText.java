@@ -0,0 +1,4 @@
+package searchengine.indexing;
+
+public record PageText(String title, String description, String text) {
+}
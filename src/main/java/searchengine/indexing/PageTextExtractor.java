@@ -0,0 +1,97 @@
+package searchengine.indexing;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+import java.util.Set;
+
+/**
+ * Collects title, meta description and visible body text of a page in one walk over the DOM.
+ */
+public final class PageTextExtractor {
+
+    private static final Set<String> skippedTags = Set.of("script", "style", "noscript", "template", "svg", "iframe");
+
+    private PageTextExtractor() {
+    }
+
+    public static PageText extract(Document document) {
+        TextCollector collector = new TextCollector();
+        NodeTraversor.filter(collector, document);
+        return new PageText(collector.title.toString().trim(), collector.description,
+                collector.text.toString().trim());
+    }
+
+    private static class TextCollector implements NodeFilter {
+        private final StringBuilder title = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        private String description = "";
+        private boolean inTitle;
+        private boolean inBody;
+        private boolean spaceRequired;
+
+        @Override
+        public FilterResult head(Node node, int depth) {
+            if (node instanceof TextNode textNode) {
+                if (inTitle) {
+                    title.append(textNode.text());
+                } else if (inBody) {
+                    appendText(textNode.text());
+                }
+                return FilterResult.CONTINUE;
+            }
+            if (!(node instanceof Element element)) {
+                return FilterResult.CONTINUE;
+            }
+            String tag = element.normalName();
+            if (skippedTags.contains(tag)) {
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            if (element.isBlock() || tag.equals("br")) {
+                spaceRequired = true;
+            }
+            switch (tag) {
+                case "title" -> inTitle = title.length() == 0;
+                case "body" -> inBody = true;
+                case "meta" -> {
+                    if (description.isEmpty() && element.attr("name").equalsIgnoreCase("description")) {
+                        description = element.attr("content").trim();
+                    }
+                }
+                default -> {
+                }
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        @Override
+        public FilterResult tail(Node node, int depth) {
+            if (node instanceof Element element) {
+                spaceRequired |= element.isBlock();
+                switch (element.normalName()) {
+                    case "title" -> inTitle = false;
+                    case "body" -> inBody = false;
+                    default -> {
+                    }
+                }
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        private void appendText(String value) {
+            if (value.isBlank()) {
+                spaceRequired |= !value.isEmpty();
+                return;
+            }
+            if (text.length() > 0 && (spaceRequired || value.charAt(0) == ' ')) {
+                text.append(' ');
+            }
+            text.append(value.trim());
+            spaceRequired = value.charAt(value.length() - 1) == ' ';
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package searchengine.indexing;
+
+import java.util.Map;
+
+/**
+ * Fetched and lemmatized page ready to be saved, id is set for pages already stored.
+ */
+public record ParsedPage(Long id, String path, int code, String content, PageText text, Map<String, Integer> lemmas,
+                         String etag, String lastModified, String contentHash, boolean changed) {
+}
@@ -0,0 +1,531 @@
+package searchengine.indexing;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Varint-encoded page ids and ranks of one lemma with a skip table.
+ */
+public class PostingList {
+
+    public static final int NO_MORE_PAGES = Integer.MAX_VALUE;
+    private static final int SKIP_INTERVAL = 64;
+    private static final int MERGE_THRESHOLD = 256;
+    private static final int WRITE_CHUNK = 8192;
+
+    private byte[] data = new byte[16];
+    private int length;
+    private int size;
+    private int lastPageId;
+
+    private int[] skipPageIds = new int[4];
+    private int[] skipOffsets = new int[4];
+    private int skipCount;
+
+    private int[] pendingPageIds = new int[0];
+    private int[] pendingRanks = new int[0];
+    private int pendingCount;
+
+    private final ByteBuffer view;
+    private final PostingList[] parts;
+    private final IntPredicate[] deletedPages;
+
+    public PostingList() {
+        this.view = null;
+        this.parts = null;
+        this.deletedPages = null;
+    }
+
+    private PostingList(ByteBuffer view, int size, int[] skipPageIds, int[] skipOffsets) {
+        this.view = view;
+        this.parts = null;
+        this.deletedPages = null;
+        this.size = size;
+        this.length = view.limit();
+        this.skipPageIds = skipPageIds;
+        this.skipOffsets = skipOffsets;
+        this.skipCount = skipPageIds.length;
+    }
+
+    /**
+     * Reads the list written by {@link #writeTo} at the given offset without copying the postings.
+     */
+    public static PostingList read(ByteBuffer buffer, int offset) {
+        int size = buffer.getInt(offset);
+        int skipCount = buffer.getInt(offset + 4);
+        int length = buffer.getInt(offset + 8);
+        int position = offset + 12;
+        int[] skipPageIds = new int[skipCount];
+        int[] skipOffsets = new int[skipCount];
+        for (int i = 0; i < skipCount; i++, position += 8) {
+            skipPageIds[i] = buffer.getInt(position);
+            skipOffsets[i] = buffer.getInt(position + 4);
+        }
+        ByteBuffer postings = buffer.duplicate().position(position).limit(position + length).slice();
+        return new PostingList(postings, size, skipPageIds, skipOffsets);
+    }
+
+    /**
+     * Read-only view of lists holding different pages, a part skips the pages its filter reports as deleted.
+     *
+     * @param deletedPages filter of every part, null where nothing is deleted
+     */
+    public static PostingList union(List<PostingList> parts, List<IntPredicate> deletedPages) {
+        if (parts.isEmpty()) {
+            return new PostingList();
+        }
+        if (parts.size() == 1 && deletedPages.get(0) == null) {
+            return parts.get(0);
+        }
+        return new PostingList(parts.toArray(PostingList[]::new), deletedPages.toArray(IntPredicate[]::new));
+    }
+
+    private PostingList(PostingList[] parts, IntPredicate[] deletedPages) {
+        this.view = null;
+        this.parts = parts;
+        this.deletedPages = deletedPages;
+        for (PostingList part : parts) {
+            this.size += part.size();
+        }
+    }
+
+    /**
+     * Adds the posting or replaces the rank of a page that is already in the list.
+     */
+    public synchronized void add(int pageId, int rank) {
+        checkWritable();
+        if (pageId > lastPageId) {
+            append(pageId, rank);
+            return;
+        }
+        if (pendingCount == pendingPageIds.length) {
+            pendingPageIds = Arrays.copyOf(pendingPageIds, Math.max(8, pendingCount * 2));
+            pendingRanks = Arrays.copyOf(pendingRanks, pendingPageIds.length);
+        }
+        pendingPageIds[pendingCount] = pageId;
+        pendingRanks[pendingCount] = rank;
+        pendingCount++;
+        if (pendingCount >= MERGE_THRESHOLD) {
+            mergePending();
+        }
+    }
+
+    /**
+     * Removes the postings of all given pages, the list is rebuilt at most once.
+     */
+    public synchronized void removeAll(int[] pageIds) {
+        checkWritable();
+        mergePending();
+        int[] removed = pageIds.clone();
+        Arrays.sort(removed);
+        int[] keptPageIds = new int[size];
+        int[] keptRanks = new int[size];
+        int count = 0;
+        int j = 0;
+        Cursor cursor = newCursor();
+        while (cursor.next()) {
+            while (j < removed.length && removed[j] < cursor.pageId()) {
+                j++;
+            }
+            if (j < removed.length && removed[j] == cursor.pageId()) {
+                continue;
+            }
+            keptPageIds[count] = cursor.pageId();
+            keptRanks[count++] = cursor.rank();
+        }
+        if (count == size) {
+            return;
+        }
+        reset();
+        for (int i = 0; i < count; i++) {
+            append(keptPageIds[i], keptRanks[i]);
+        }
+    }
+
+    /**
+     * @return number of postings, for a union including the deleted pages of its parts
+     */
+    public synchronized int size() {
+        return size + pendingCount;
+    }
+
+    public synchronized Cursor cursor() {
+        mergePending();
+        return newCursor();
+    }
+
+    /**
+     * Writes the size, the skip table and the encoded postings, the format {@link #read} expects.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        if (parts != null) {
+            throw new UnsupportedOperationException("Union of posting lists has to be copied before writing");
+        }
+        mergePending();
+        out.writeInt(size);
+        out.writeInt(skipCount);
+        out.writeInt(length);
+        for (int i = 0; i < skipCount; i++) {
+            out.writeInt(skipPageIds[i]);
+            out.writeInt(skipOffsets[i]);
+        }
+        if (view == null) {
+            out.write(data, 0, length);
+            return;
+        }
+        ByteBuffer postings = view.duplicate();
+        byte[] chunk = new byte[Math.min(length, WRITE_CHUNK)];
+        while (postings.hasRemaining()) {
+            int count = Math.min(chunk.length, postings.remaining());
+            postings.get(chunk, 0, count);
+            out.write(chunk, 0, count);
+        }
+    }
+
+    /**
+     * @return every page of the list scored as the list with the given index
+     */
+    public Intersection score(int list, Scorer scorer) {
+        Cursor cursor = cursor();
+        int[] pageIds = new int[size()];
+        double[] scores = new double[pageIds.length];
+        int count = 0;
+        while (cursor.next()) {
+            if (count == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, count * 2 + 1);
+                scores = Arrays.copyOf(scores, pageIds.length);
+            }
+            pageIds[count] = cursor.pageId();
+            scores[count++] = scorer.score(list, cursor.pageId(), cursor.rank());
+        }
+        return new Intersection(Arrays.copyOf(pageIds, count), Arrays.copyOf(scores, count));
+    }
+
+    /**
+     * Keeps the pages of the intersection that are also in this list and adds their scores.
+     */
+    public Intersection retain(Intersection intersection, int list, Scorer scorer) {
+        Cursor cursor = cursor();
+        int[] pageIds = new int[intersection.size()];
+        double[] scores = new double[pageIds.length];
+        int matched = 0;
+        for (int j = 0; j < intersection.size(); j++) {
+            int pageId = intersection.pageIds()[j];
+            if (!cursor.advance(pageId)) {
+                break;
+            }
+            if (cursor.pageId() == pageId) {
+                pageIds[matched] = pageId;
+                scores[matched++] = intersection.scores()[j] + scorer.score(list, pageId, cursor.rank());
+            }
+        }
+        return new Intersection(Arrays.copyOf(pageIds, matched), Arrays.copyOf(scores, matched));
+    }
+
+    private void append(int pageId, int rank) {
+        if (size % SKIP_INTERVAL == 0) {
+            if (skipCount == skipPageIds.length) {
+                skipPageIds = Arrays.copyOf(skipPageIds, skipCount * 2);
+                skipOffsets = Arrays.copyOf(skipOffsets, skipCount * 2);
+            }
+            skipPageIds[skipCount] = pageId;
+            skipOffsets[skipCount] = length;
+            skipCount++;
+        }
+        ensureCapacity(length + 10);
+        length = writeVarint(data, length, pageId - lastPageId);
+        length = writeVarint(data, length, rank);
+        lastPageId = pageId;
+        size++;
+    }
+
+    private void mergePending() {
+        if (pendingCount == 0) {
+            return;
+        }
+        int[] pageIds = new int[size];
+        int[] ranks = new int[size];
+        Cursor cursor = newCursor();
+        for (int i = 0; cursor.next(); i++) {
+            pageIds[i] = cursor.pageId();
+            ranks[i] = cursor.rank();
+        }
+        Integer[] order = new Integer[pendingCount];
+        for (int i = 0; i < pendingCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> pendingPageIds[i]));
+
+        int oldSize = size;
+        int[] newPageIds = pendingPageIds;
+        int[] newRanks = pendingRanks;
+        pendingPageIds = new int[0];
+        pendingRanks = new int[0];
+        pendingCount = 0;
+        reset();
+
+        int i = 0;
+        int j = 0;
+        while (i < oldSize || j < order.length) {
+            int pending = j < order.length ? order[j] : -1;
+            if (pending < 0 || (i < oldSize && pageIds[i] < newPageIds[pending])) {
+                append(pageIds[i], ranks[i]);
+                i++;
+                continue;
+            }
+            if (i < oldSize && pageIds[i] == newPageIds[pending]) {
+                i++;
+            }
+            if (j + 1 < order.length && newPageIds[order[j + 1]] == newPageIds[pending]) {
+                j++;
+                continue;
+            }
+            append(newPageIds[pending], newRanks[pending]);
+            j++;
+        }
+    }
+
+    private Cursor newCursor() {
+        if (parts != null) {
+            Cursor[] cursors = new Cursor[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                cursors[i] = parts[i].cursor();
+            }
+            return new UnionCursor(cursors, deletedPages);
+        }
+        ByteBuffer postings = view == null ? ByteBuffer.wrap(data, 0, length) : view;
+        return new EncodedCursor(postings, skipPageIds, skipOffsets, skipCount);
+    }
+
+    private void checkWritable() {
+        if (view != null || parts != null) {
+            throw new UnsupportedOperationException("Posting list of a segment is read-only");
+        }
+    }
+
+    private void reset() {
+        data = new byte[Math.max(16, data.length)];
+        length = 0;
+        size = 0;
+        lastPageId = 0;
+        skipPageIds = new int[Math.max(4, skipPageIds.length)];
+        skipOffsets = new int[skipPageIds.length];
+        skipCount = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Score of one posting, list is the index of the query lemma the posting list belongs to.
+     */
+    public interface Scorer {
+        double score(int list, int pageId, int rank);
+    }
+
+    public record Intersection(int[] pageIds, double[] scores) {
+        public int size() {
+            return pageIds.length;
+        }
+    }
+
+    public interface Cursor {
+        int pageId();
+
+        int rank();
+
+        boolean next();
+
+        /**
+         * Moves to the first posting whose page id is not less than the target.
+         */
+        boolean advance(int target);
+    }
+
+    private static class EncodedCursor implements Cursor {
+        private final ByteBuffer data;
+        private final int length;
+        private final int[] skipPageIds;
+        private final int[] skipOffsets;
+        private final int skipCount;
+
+        private int position;
+        private int index = -1;
+        private int pageId;
+        private int rank;
+
+        private EncodedCursor(ByteBuffer data, int[] skipPageIds, int[] skipOffsets, int skipCount) {
+            this.data = data;
+            this.length = data.limit();
+            this.skipPageIds = skipPageIds;
+            this.skipOffsets = skipOffsets;
+            this.skipCount = skipCount;
+        }
+
+        @Override
+        public int pageId() {
+            return pageId;
+        }
+
+        @Override
+        public int rank() {
+            return rank;
+        }
+
+        @Override
+        public boolean next() {
+            if (position >= length) {
+                pageId = NO_MORE_PAGES;
+                return false;
+            }
+            pageId += readVarint();
+            rank = readVarint();
+            index++;
+            return true;
+        }
+
+        @Override
+        public boolean advance(int target) {
+            if (index >= 0 && pageId >= target) {
+                return pageId != NO_MORE_PAGES;
+            }
+            int block = findBlock(target);
+            if (block >= 0 && block * SKIP_INTERVAL > index) {
+                position = skipOffsets[block];
+                readVarint();
+                pageId = skipPageIds[block];
+                rank = readVarint();
+                index = block * SKIP_INTERVAL;
+            }
+            while (index < 0 || pageId < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int findBlock(int target) {
+            int low = Math.max(0, index / SKIP_INTERVAL);
+            if (low >= skipCount || skipPageIds[low] > target) {
+                return -1;
+            }
+            int step = 1;
+            int high = low + step;
+            while (high < skipCount && skipPageIds[high] <= target) {
+                low = high;
+                step *= 2;
+                high = low + step;
+            }
+            high = Math.min(high, skipCount - 1);
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (skipPageIds[middle] <= target) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = data.get(position++);
+                value |= (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /**
+     * Walks the live postings of all parts in page id order, a page is live in at most one part.
+     */
+    private static class UnionCursor implements Cursor {
+        private final Cursor[] cursors;
+        private final IntPredicate[] deletedPages;
+        private boolean started;
+        private int pageId;
+        private int rank;
+
+        private UnionCursor(Cursor[] cursors, IntPredicate[] deletedPages) {
+            this.cursors = cursors;
+            this.deletedPages = deletedPages;
+        }
+
+        @Override
+        public int pageId() {
+            return pageId;
+        }
+
+        @Override
+        public int rank() {
+            return rank;
+        }
+
+        @Override
+        public boolean next() {
+            for (int i = 0; i < cursors.length; i++) {
+                if (!started || cursors[i].pageId() == pageId) {
+                    cursors[i].next();
+                    skipDeleted(i);
+                }
+            }
+            return moveToFirst();
+        }
+
+        @Override
+        public boolean advance(int target) {
+            if (started && pageId >= target) {
+                return pageId != NO_MORE_PAGES;
+            }
+            for (int i = 0; i < cursors.length; i++) {
+                if (!started || cursors[i].pageId() < target) {
+                    cursors[i].advance(target);
+                    skipDeleted(i);
+                }
+            }
+            return moveToFirst();
+        }
+
+        private void skipDeleted(int i) {
+            Cursor cursor = cursors[i];
+            while (deletedPages[i] != null && cursor.pageId() != NO_MORE_PAGES && deletedPages[i].test(cursor.pageId())) {
+                cursor.next();
+            }
+        }
+
+        private boolean moveToFirst() {
+            started = true;
+            pageId = NO_MORE_PAGES;
+            for (Cursor cursor : cursors) {
+                if (cursor.pageId() < pageId) {
+                    pageId = cursor.pageId();
+                    rank = cursor.rank();
+                }
+            }
+            return pageId != NO_MORE_PAGES;
+        }
+    }
+}
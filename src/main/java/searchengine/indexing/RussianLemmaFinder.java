@@ -1,83 +1,68 @@
 package searchengine.indexing;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.*;
 
+@Component
 public class RussianLemmaFinder {
+    private static final int WORD_CACHE_SIZE = 200_000;
     private final LuceneMorphology luceneMorphology;
     private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
+    private final Cache<String, WordForms> wordCache = Caffeine.newBuilder()
+            .maximumSize(WORD_CACHE_SIZE)
+            .recordStats()
+            .build();
 
     public RussianLemmaFinder() throws IOException {
         this.luceneMorphology = new RussianLuceneMorphology();
     }
-    public HashMap<String, Integer> collectLemmas(String text) {
-        String[] words = arrayContainsRussianWords(text);
-        HashMap<String, Integer> lemmas = new HashMap<>();
 
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                continue;
-            }
-
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
-            }
-
-            String normalWord = normalForms.get(0);
+    private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
+        return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
+    }
 
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
-            }
-        }
+    private boolean hasParticleProperty(String wordBase) {
+        return Arrays.stream(particlesNames).anyMatch(wordBase::contains);
+    }
 
-        return lemmas;
+    public boolean checkWordIsParticle (String word) {
+        return getWordForms(word).particle();
     }
 
-    public Set<String> getLemmaSet(String text) {
-        String[] textArray = arrayContainsRussianWords(text);
-        Set<String> lemmaSet = new HashSet<>();
-        for (String word : textArray) {
-            if (!word.isEmpty()) {
-                List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-                if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                    continue;
-                }
-                lemmaSet.addAll(luceneMorphology.getNormalForms(word));
-            }
-        }
-        return lemmaSet;
+    /**
+     * @return normal forms of a lower-case word, empty for particles
+     */
+    public List<String> getNormalForms(String word) {
+        return getWordForms(word).normalForms();
     }
 
-    private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
-        return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
+    public CacheStats getCacheStats() {
+        return wordCache.stats();
     }
 
-    private boolean hasParticleProperty(String wordBase) {
-        return Arrays.stream(particlesNames).anyMatch(wordBase::contains);
+    public long getCacheSize() {
+        return wordCache.estimatedSize();
     }
 
-    private String[] arrayContainsRussianWords(String text) {
-        return text.toLowerCase()
-                .replaceAll("([^а-я\\s])", " ")
-                .trim()
-                .split("\\s+");
+    private WordForms getWordForms(String word) {
+        return wordCache.get(word, this::analyzeWord);
     }
 
-    public boolean checkWordIsParticle (String word) {
-        List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-        return anyWordBaseBelongToParticle(wordBaseForms);
+    private WordForms analyzeWord(String word) {
+        if (anyWordBaseBelongToParticle(luceneMorphology.getMorphInfo(word))) {
+            return new WordForms(true, List.of());
+        }
+        return new WordForms(false, List.copyOf(luceneMorphology.getNormalForms(word)));
     }
 
+    private record WordForms(boolean particle, List<String> normalForms) {
+    }
 
 }
@@ -0,0 +1,273 @@
+package searchengine.indexing;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Immutable memory-mapped file with the postings of a batch of pages of one site:
+ * <pre>
+ * postings   {@link PostingList#writeTo} for every lemma
+ * pages      int count, count * (long lemmaId, int rank) for every page
+ * lemmas     long lemmaId, int offset of the postings, sorted by lemma id
+ * page table int pageId, int offset of the page lemmas, sorted by page id
+ * footer     int lemmas offset, int lemma count, int page table offset, int page count, int magic
+ * </pre>
+ */
+class Segment {
+
+    private static final int MAGIC = 0x53454731;
+    private static final int FOOTER_LENGTH = 20;
+    private static final int LEMMA_ENTRY_LENGTH = 12;
+    private static final int PAGE_ENTRY_LENGTH = 8;
+
+    private final Path file;
+    private final long generation;
+    private final MappedByteBuffer buffer;
+    private final int lemmasOffset;
+    private final int lemmaCount;
+    private final int pagesOffset;
+    private final int pageCount;
+    private volatile BitSet deletedPages = new BitSet();
+
+    private Segment(Path file, long generation, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.generation = generation;
+        this.buffer = buffer;
+        int footer = buffer.capacity() - FOOTER_LENGTH;
+        if (footer < 0 || buffer.getInt(footer + 16) != MAGIC) {
+            throw new IOException("Corrupted segment " + file);
+        }
+        this.lemmasOffset = buffer.getInt(footer);
+        this.lemmaCount = buffer.getInt(footer + 4);
+        this.pagesOffset = buffer.getInt(footer + 8);
+        this.pageCount = buffer.getInt(footer + 12);
+    }
+
+    static Segment open(Path file, long generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Segment(file, generation, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    int getLemmaCount() {
+        return lemmaCount;
+    }
+
+    long getLemmaId(int ordinal) {
+        return buffer.getLong(lemmasOffset + ordinal * LEMMA_ENTRY_LENGTH);
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    int getPageId(int ordinal) {
+        return buffer.getInt(pagesOffset + ordinal * PAGE_ENTRY_LENGTH);
+    }
+
+    /**
+     * @return postings of the lemma including deleted pages, null if no page of the segment contains it
+     */
+    PostingList getPostings(long lemmaId) {
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = getLemmaId(middle);
+            if (current < lemmaId) {
+                low = middle + 1;
+            } else if (current > lemmaId) {
+                high = middle - 1;
+            } else {
+                return PostingList.read(buffer, buffer.getInt(lemmasOffset + middle * LEMMA_ENTRY_LENGTH + 8));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return ranks of the lemmas of a live page by lemma id, null if the segment does not hold it
+     */
+    Map<Long, Integer> getPageLemmas(int pageId) {
+        int ordinal = findPage(pageId);
+        if (ordinal < 0 || deletedPages.get(ordinal)) {
+            return null;
+        }
+        return getPageLemmasAt(ordinal);
+    }
+
+    /**
+     * @return ranks of the lemmas of the page with the given ordinal, deleted or not
+     */
+    Map<Long, Integer> getPageLemmasAt(int ordinal) {
+        int position = buffer.getInt(pagesOffset + ordinal * PAGE_ENTRY_LENGTH + 4);
+        int count = buffer.getInt(position);
+        Map<Long, Integer> lemmaRanks = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int entry = position + 4 + i * LEMMA_ENTRY_LENGTH;
+            lemmaRanks.put(buffer.getLong(entry), buffer.getInt(entry + 8));
+        }
+        return lemmaRanks;
+    }
+
+    /**
+     * @return marks of the deleted page ordinals, the set is never modified once returned
+     */
+    BitSet getDeletedPages() {
+        return deletedPages;
+    }
+
+    /**
+     * @return test of page ids against the given marks of this segment, null when no page is marked
+     */
+    IntPredicate getDeletedPageFilter(BitSet deleted) {
+        if (deleted.isEmpty()) {
+            return null;
+        }
+        return pageId -> {
+            int ordinal = findPage(pageId);
+            return ordinal >= 0 && deleted.get(ordinal);
+        };
+    }
+
+    int getLivePageCount() {
+        return pageCount - deletedPages.cardinality();
+    }
+
+    /**
+     * Marks the pages held by the newer segment as deleted.
+     */
+    void deletePages(Segment newer) {
+        BitSet deleted = (BitSet) deletedPages.clone();
+        for (int i = 0; i < newer.pageCount; i++) {
+            int ordinal = findPage(newer.getPageId(i));
+            if (ordinal >= 0) {
+                deleted.set(ordinal);
+            }
+        }
+        deletedPages = deleted;
+    }
+
+    int findPage(int pageId) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = getPageId(middle);
+            if (current < pageId) {
+                low = middle + 1;
+            } else if (current > pageId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Postings must be added in lemma id order before the pages, pages in page id order.
+     */
+    static class Writer implements Closeable {
+
+        private final Path file;
+        private final Path temporaryFile;
+        private final FileOutputStream fileStream;
+        private final DataOutputStream out;
+        private long[] lemmaIds = new long[64];
+        private int[] postingOffsets = new int[64];
+        private int lemmaCount;
+        private int[] pageIds = new int[64];
+        private int[] pageOffsets = new int[64];
+        private int pageCount;
+        private boolean committed;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.fileStream = new FileOutputStream(temporaryFile.toFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(fileStream, 1 << 16));
+        }
+
+        void addPostings(long lemmaId, PostingList postings) throws IOException {
+            if (postings.size() == 0) {
+                return;
+            }
+            if (lemmaCount == lemmaIds.length) {
+                lemmaIds = Arrays.copyOf(lemmaIds, lemmaCount * 2);
+                postingOffsets = Arrays.copyOf(postingOffsets, lemmaCount * 2);
+            }
+            lemmaIds[lemmaCount] = lemmaId;
+            postingOffsets[lemmaCount++] = out.size();
+            postings.writeTo(out);
+        }
+
+        void addPage(int pageId, Map<Long, Integer> lemmaRanks) throws IOException {
+            if (pageCount == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, pageCount * 2);
+                pageOffsets = Arrays.copyOf(pageOffsets, pageCount * 2);
+            }
+            pageIds[pageCount] = pageId;
+            pageOffsets[pageCount++] = out.size();
+            out.writeInt(lemmaRanks.size());
+            for (Map.Entry<Long, Integer> entry : lemmaRanks.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+
+        Segment commit(long generation) throws IOException {
+            int lemmasOffset = out.size();
+            for (int i = 0; i < lemmaCount; i++) {
+                out.writeLong(lemmaIds[i]);
+                out.writeInt(postingOffsets[i]);
+            }
+            int pagesOffset = out.size();
+            for (int i = 0; i < pageCount; i++) {
+                out.writeInt(pageIds[i]);
+                out.writeInt(pageOffsets[i]);
+            }
+            out.writeInt(lemmasOffset);
+            out.writeInt(lemmaCount);
+            out.writeInt(pagesOffset);
+            out.writeInt(pageCount);
+            out.writeInt(MAGIC);
+            out.flush();
+            fileStream.getFD().sync();
+            out.close();
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+            return open(file, generation);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package searchengine.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.Site;
+import searchengine.repositories.IndexBatchRepository;
+import searchengine.repositories.IndexBatchRepository.IndexedLemma;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Keeps postings in immutable segment files, one directory per site, instead of index_table.
+ */
+@Component
+@ConditionalOnProperty(prefix = "search-settings", name = "index-backend", havingValue = "segments")
+@RequiredArgsConstructor
+public class SegmentIndexStore implements IndexStore {
+
+    private static final String SITE_DIRECTORY_PREFIX = "site-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String GENERATION_SEPARATOR = "-";
+    private static final double LEVEL_SPAN = 0.75;
+
+    private final SearchSettings searchSettings;
+    private final IndexBatchRepository indexBatchRepository;
+    private final Map<Long, SiteSegments> sites = new ConcurrentHashMap<>();
+    private final Logger logger = LogManager.getRootLogger();
+    private ExecutorService mergeExecutor;
+
+    @PostConstruct
+    public void load() throws IOException {
+        mergeExecutor = Executors.newSingleThreadExecutor();
+        Path root = Paths.get(searchSettings.getSegmentDirectory());
+        Files.createDirectories(root);
+        long start = System.currentTimeMillis();
+        try (Stream<Path> directories = Files.list(root)) {
+            for (Path directory : directories.filter(Files::isDirectory).toList()) {
+                String name = directory.getFileName().toString();
+                if (name.startsWith(SITE_DIRECTORY_PREFIX)) {
+                    SiteSegments siteSegments = loadSite(directory);
+                    sites.put(Long.parseLong(name.substring(SITE_DIRECTORY_PREFIX.length())), siteSegments);
+                    scheduleMerge(siteSegments);
+                }
+            }
+        }
+        logger.info("Index segments loaded in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        mergeExecutor.shutdown();
+        mergeExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public PostingList getPostings(Site site, long lemmaId) {
+        SiteSegments siteSegments = sites.get(site.getId());
+        if (siteSegments == null) {
+            return new PostingList();
+        }
+        List<Segment> segments = siteSegments.segments;
+        return unionPostings(segments, segments.stream().map(Segment::getDeletedPages).toList(), lemmaId);
+    }
+
+    @Override
+    public Map<Long, Map<String, IndexedLemma>> findPageLemmas(Site site, Collection<Long> pageIds) {
+        Map<Long, Map<Long, Integer>> pageLemmaRanks = findPageLemmaRanks(site, pageIds);
+        Set<Long> lemmaIds = new HashSet<>();
+        pageLemmaRanks.values().forEach(lemmaRanks -> lemmaIds.addAll(lemmaRanks.keySet()));
+        Map<Long, String> texts = indexBatchRepository.findLemmaTexts(lemmaIds);
+        Map<Long, Map<String, IndexedLemma>> pageLemmas = new HashMap<>();
+        pageLemmaRanks.forEach((pageId, lemmaRanks) -> {
+            Map<String, IndexedLemma> lemmas = new HashMap<>();
+            lemmaRanks.forEach((lemmaId, rank) -> lemmas.put(texts.get(lemmaId), new IndexedLemma(lemmaId, rank)));
+            pageLemmas.put(pageId, lemmas);
+        });
+        return pageLemmas;
+    }
+
+    @Override
+    public void addPages(Site site, Map<Long, Map<Long, Integer>> pageLemmaRanks) {
+        SiteSegments siteSegments = getOrCreate(site);
+        synchronized (siteSegments) {
+            writeSegment(siteSegments, pageLemmaRanks);
+        }
+        scheduleMerge(siteSegments);
+    }
+
+    /**
+     * Pages are rewritten with their full lemma sets, the diff is applied to the lemmas of their live versions.
+     */
+    @Override
+    public void updatePages(Site site, Map<Long, List<Long>> removedLemmaIds,
+                            Map<Long, Map<Long, Integer>> changedRanks, Map<Long, Map<Long, Integer>> addedRanks) {
+        SiteSegments siteSegments = getOrCreate(site);
+        synchronized (siteSegments) {
+            Map<Long, Map<Long, Integer>> pageLemmaRanks = findPageLemmaRanks(site, removedLemmaIds.keySet());
+            pageLemmaRanks.forEach((pageId, lemmaRanks) -> {
+                removedLemmaIds.get(pageId).forEach(lemmaRanks::remove);
+                lemmaRanks.putAll(changedRanks.getOrDefault(pageId, Map.of()));
+                lemmaRanks.putAll(addedRanks.getOrDefault(pageId, Map.of()));
+            });
+            writeSegment(siteSegments, pageLemmaRanks);
+        }
+        scheduleMerge(siteSegments);
+    }
+
+    @Override
+    public void removeSite(Site site) {
+        SiteSegments siteSegments = sites.remove(site.getId());
+        if (siteSegments == null) {
+            return;
+        }
+        synchronized (siteSegments) {
+            siteSegments.removed = true;
+            siteSegments.segments = List.of();
+            deleteDirectory(siteSegments.directory);
+        }
+    }
+
+    private Map<Long, Map<Long, Integer>> findPageLemmaRanks(Site site, Collection<Long> pageIds) {
+        SiteSegments siteSegments = sites.get(site.getId());
+        List<Segment> segments = siteSegments == null ? List.of() : siteSegments.segments;
+        Map<Long, Map<Long, Integer>> pageLemmaRanks = new HashMap<>();
+        for (Long pageId : pageIds) {
+            Map<Long, Integer> lemmaRanks = null;
+            for (int i = segments.size() - 1; i >= 0 && lemmaRanks == null; i--) {
+                lemmaRanks = segments.get(i).getPageLemmas(pageId.intValue());
+            }
+            pageLemmaRanks.put(pageId, lemmaRanks == null ? new HashMap<>() : lemmaRanks);
+        }
+        return pageLemmaRanks;
+    }
+
+    private void writeSegment(SiteSegments siteSegments, Map<Long, Map<Long, Integer>> pageLemmaRanks) {
+        if (pageLemmaRanks.isEmpty()) {
+            return;
+        }
+        SortedMap<Long, PostingList> postings = new TreeMap<>();
+        SortedMap<Long, Map<Long, Integer>> pages = new TreeMap<>(pageLemmaRanks);
+        pages.forEach((pageId, lemmaRanks) -> lemmaRanks.forEach((lemmaId, rank) ->
+                postings.computeIfAbsent(lemmaId, id -> new PostingList()).add(pageId.intValue(), rank)));
+        long generation = ++siteSegments.lastGeneration;
+        try {
+            Files.createDirectories(siteSegments.directory);
+            try (Segment.Writer writer = new Segment.Writer(getSegmentFile(siteSegments.directory, generation))) {
+                for (Map.Entry<Long, PostingList> entry : postings.entrySet()) {
+                    writer.addPostings(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<Long, Map<Long, Integer>> entry : pages.entrySet()) {
+                    writer.addPage(entry.getKey().intValue(), entry.getValue());
+                }
+                siteSegments.add(writer.commit(generation));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void scheduleMerge(SiteSegments siteSegments) {
+        List<Segment> run;
+        synchronized (siteSegments) {
+            if (siteSegments.merging || siteSegments.removed) {
+                return;
+            }
+            int mergeFactor = Math.max(2, searchSettings.getSegmentMergeFactor());
+            int start = findMergeRun(siteSegments.segments, mergeFactor);
+            if (start < 0) {
+                return;
+            }
+            siteSegments.merging = true;
+            run = List.copyOf(siteSegments.segments.subList(start, start + mergeFactor));
+        }
+        mergeExecutor.execute(() -> merge(siteSegments, run));
+    }
+
+    /**
+     * Picks the oldest merge factor adjacent segments of the largest size level, a level spans LEVEL_SPAN powers
+     * of the merge factor in live pages and takes in the smaller segments between its members, so similar sized
+     * segments are merged and a page is rewritten about log(pages) times.
+     *
+     * @return index of the first segment of the run, -1 when no level has enough segments
+     */
+    private static int findMergeRun(List<Segment> segments, int mergeFactor) {
+        double[] levels = segments.stream()
+                .mapToDouble(segment -> Math.log(Math.max(1, segment.getLivePageCount())) / Math.log(mergeFactor))
+                .toArray();
+        int start = 0;
+        while (start < levels.length) {
+            double maxLevel = Arrays.stream(levels, start, levels.length).max().orElseThrow();
+            int end = levels.length - 1;
+            while (levels[end] < maxLevel - LEVEL_SPAN) {
+                end--;
+            }
+            if (end - start + 1 >= mergeFactor) {
+                return start;
+            }
+            start = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the pages of the run live when the merge starts into a new file covering the generations of the run.
+     */
+    private void merge(SiteSegments siteSegments, List<Segment> run) {
+        long start = System.currentTimeMillis();
+        Segment last = run.get(run.size() - 1);
+        List<BitSet> deletedPages = run.stream().map(Segment::getDeletedPages).toList();
+        Path file = getSegmentFile(siteSegments.directory, getFirstGeneration(run.get(0).getFile()), last.getGeneration());
+        Segment merged = null;
+        try (Segment.Writer writer = new Segment.Writer(file)) {
+            for (long lemmaId : getLemmaIds(run)) {
+                writer.addPostings(lemmaId, copyPostings(unionPostings(run, deletedPages, lemmaId)));
+            }
+            for (int[] page : getLivePages(run, deletedPages)) {
+                writer.addPage(page[0], run.get(page[1]).getPageLemmasAt(page[2]));
+            }
+            merged = writer.commit(last.getGeneration());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Merge of " + siteSegments.directory + " failed: " + e.getMessage());
+        }
+        synchronized (siteSegments) {
+            siteSegments.merging = false;
+            if (merged == null) {
+                return;
+            }
+            if (siteSegments.removed) {
+                deleteFile(merged.getFile());
+                return;
+            }
+            List<Segment> current = siteSegments.segments;
+            int runStart = current.indexOf(run.get(0));
+            List<Segment> newer = current.subList(runStart + run.size(), current.size());
+            for (Segment segment : newer) {
+                merged.deletePages(segment);
+            }
+            List<Segment> segments = new ArrayList<>(current.subList(0, runStart));
+            segments.add(merged);
+            segments.addAll(newer);
+            siteSegments.segments = List.copyOf(segments);
+        }
+        for (Segment segment : run) {
+            deleteFile(segment.getFile());
+        }
+        logger.info("Merged " + run.size() + " segments of " + siteSegments.directory
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+        scheduleMerge(siteSegments);
+    }
+
+    /**
+     * Postings of the lemma from all segments read in place, pages deleted in the given marks are skipped.
+     */
+    private static PostingList unionPostings(List<Segment> segments, List<BitSet> deletedPages, long lemmaId) {
+        List<PostingList> parts = new ArrayList<>();
+        List<IntPredicate> filters = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            PostingList postings = segments.get(i).getPostings(lemmaId);
+            if (postings != null) {
+                parts.add(postings);
+                filters.add(segments.get(i).getDeletedPageFilter(deletedPages.get(i)));
+            }
+        }
+        return PostingList.union(parts, filters);
+    }
+
+    private static PostingList copyPostings(PostingList postings) {
+        PostingList copy = new PostingList();
+        PostingList.Cursor cursor = postings.cursor();
+        while (cursor.next()) {
+            copy.add(cursor.pageId(), cursor.rank());
+        }
+        return copy;
+    }
+
+    private static long[] getLemmaIds(List<Segment> segments) {
+        return segments.stream()
+                .flatMapToLong(segment -> IntStream.range(0, segment.getLemmaCount())
+                        .mapToLong(segment::getLemmaId))
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * @return page id, the index of the segment holding its live version and its ordinal there, sorted by page id
+     */
+    private static List<int[]> getLivePages(List<Segment> segments, List<BitSet> deletedPages) {
+        List<int[]> pages = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            for (int j = 0; j < segment.getPageCount(); j++) {
+                if (!deletedPages.get(i).get(j)) {
+                    pages.add(new int[]{segment.getPageId(j), i, j});
+                }
+            }
+        }
+        pages.sort(Comparator.comparingInt(page -> page[0]));
+        return pages;
+    }
+
+    private SiteSegments loadSite(Path directory) throws IOException {
+        SiteSegments siteSegments = new SiteSegments(directory);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.toList();
+        }
+        List<Path> segmentFiles = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                segmentFiles.add(file);
+            } else {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (Path file : List.copyOf(segmentFiles)) {
+            if (segmentFiles.stream().anyMatch(other -> other != file && covers(other, file))) {
+                segmentFiles.remove(file);
+                Files.deleteIfExists(file);
+            }
+        }
+        segmentFiles.sort(Comparator.comparingLong(SegmentIndexStore::getGeneration));
+        for (Path file : segmentFiles) {
+            siteSegments.add(Segment.open(file, getGeneration(file)));
+            siteSegments.lastGeneration = getGeneration(file);
+        }
+        return siteSegments;
+    }
+
+    private SiteSegments getOrCreate(Site site) {
+        return sites.computeIfAbsent(site.getId(), id -> new SiteSegments(
+                Paths.get(searchSettings.getSegmentDirectory(), SITE_DIRECTORY_PREFIX + id)));
+    }
+
+    private static Path getSegmentFile(Path directory, long generation) {
+        return directory.resolve(String.format("%012d%s", generation, SEGMENT_SUFFIX));
+    }
+
+    private static Path getSegmentFile(Path directory, long firstGeneration, long generation) {
+        return directory.resolve(String.format("%012d%s%012d%s", firstGeneration, GENERATION_SEPARATOR,
+                generation, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * A merged segment left next to the segments it replaced by a crash covers their generations.
+     */
+    private static boolean covers(Path merged, Path file) {
+        return getFirstGeneration(merged) <= getFirstGeneration(file) && getGeneration(file) <= getGeneration(merged);
+    }
+
+    private static long getFirstGeneration(Path file) {
+        return Long.parseLong(getGenerations(file)[0]);
+    }
+
+    private static long getGeneration(Path file) {
+        String[] generations = getGenerations(file);
+        return Long.parseLong(generations[generations.length - 1]);
+    }
+
+    private static String[] getGenerations(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - SEGMENT_SUFFIX.length()).split(GENERATION_SEPARATOR);
+    }
+
+    private void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(this::deleteFile);
+        } catch (IOException e) {
+            logger.error("Could not list " + directory + ": " + e.getMessage());
+        }
+        deleteFile(directory);
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.error("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Segments of one site from the oldest to the newest, the list is replaced, never modified.
+     */
+    private static class SiteSegments {
+        private final Path directory;
+        private volatile List<Segment> segments = List.of();
+        private long lastGeneration;
+        private boolean merging;
+        private boolean removed;
+
+        private SiteSegments(Path directory) {
+            this.directory = directory;
+        }
+
+        private void add(Segment segment) {
+            List<Segment> updated = new ArrayList<>(segments);
+            updated.forEach(older -> older.deletePages(segment));
+            updated.add(segment);
+            segments = List.copyOf(updated);
+        }
+    }
+}
@@ -4,127 +4,322 @@ import lombok.AllArgsConstructor;
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Component;
+import searchengine.config.Analyzer;
 import searchengine.config.ConnectionData;
+import searchengine.config.SearchSettings;
 import searchengine.model.*;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.IndexBatchRepository;
+import searchengine.repositories.IndexBatchRepository.IndexedLemma;
+import searchengine.repositories.PageContentRepository;
+import searchengine.repositories.PageContentRepository.PageBody;
 import searchengine.repositories.PageRepository;
+import searchengine.repositories.PageVersion;
 import searchengine.repositories.SiteRepository;
-import searchengine.services.impl.IndexingServiceImpl;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
+@Component
 @AllArgsConstructor
 public class SiteInformationAdder {
 
     private SiteRepository siteRepository;
     private PageRepository pageRepository;
-    private IndexRepository indexRepository;
-    private LemmaRepository lemmaRepository;
+    private PageContentRepository pageContentRepository;
+    private IndexBatchRepository indexBatchRepository;
+    private IndexStore indexStore;
+    private LemmaAnalyzer lemmaAnalyzer;
+    private IndexGeneration indexGeneration;
+    private LemmaDictionary lemmaDictionary;
+    private CrawlScheduler crawlScheduler;
+    private PageStatistics pageStatistics;
+    private SearchSettings searchSettings;
 
     private final ConnectionData connectionData;
 
-    public Document addPage(Site site, String url) {
-        try {
-            Thread.sleep(150);
-            Connection.Response connectionResponse = getConnectionResponse(url);
-            Document document = connectionResponse.parse();
-            String path = url.substring(site.getUrl().length() - 1);
-            if (!pageRepository.findByPathAndSite(path, site).isPresent()) {
-                Page page = new Page();
-                page.setSite(site);
-                page.setPath(path);
-                page.setContent(document.toString());
-                page.setCode(connectionResponse.statusCode());
-                pageRepository.save(page);
-                if (page.getCode() < 400) {
-                    addRussianLemmas(document, site, page);
-                }
-                site.setStatusTime(LocalDateTime.now());
-                siteRepository.save(site);
-            }
-            return document;
+    public ParsedPage parsePage(Site site, String url, int code, Document document,
+                                String etag, String lastModified, PageVersion previous) {
+        PageText pageText = PageTextExtractor.extract(document);
+        String contentHash = getContentHash(pageText);
+        boolean changed = previous == null || !previous.getCode().equals(code)
+                || !contentHash.equals(previous.getContentHash());
+        Map<String, Integer> lemmas = changed && code < 400 ? collectLemmas(site, pageText) : Map.of();
+        return new ParsedPage(previous == null ? null : previous.getId(), getPath(site, url), code,
+                document.toString(), pageText, lemmas, etag, lastModified, contentHash, changed);
+    }
 
-        } catch (InterruptedException | IOException e) {
-            site.setLastError(e.getClass().getSimpleName().concat(" ").concat(e.getMessage()));
-            site.setStatus(Status.FAILED);
-            siteRepository.save(site);
+    /**
+     * Inserts new pages and rewrites changed ones with a lemma diff.
+     */
+    public void savePages(Site site, List<ParsedPage> parsedPages) {
+        List<ParsedPage> newPages = new ArrayList<>();
+        List<ParsedPage> changedPages = new ArrayList<>();
+        Map<Long, String> refreshedContents = new HashMap<>();
+        for (ParsedPage parsedPage : parsedPages) {
+            if (parsedPage.id() == null) {
+                newPages.add(parsedPage);
+            } else if (parsedPage.changed()) {
+                changedPages.add(parsedPage);
+            } else {
+                pageRepository.updateValidators(parsedPage.id(), parsedPage.etag(), parsedPage.lastModified());
+                refreshedContents.put(parsedPage.id(), parsedPage.content());
+            }
         }
-        return null;
+        pageContentRepository.updateContents(refreshedContents);
+        insertPages(site, newPages);
+        updatePages(site, changedPages);
+        site.setStatusTime(LocalDateTime.now());
+        siteRepository.save(site);
+    }
+
+    public Map<String, PageVersion> getPageVersions(Site site) {
+        Map<String, PageVersion> versions = new HashMap<>();
+        pageRepository.findVersionsBySite(site).forEach(version -> versions.put(version.getPath(), version));
+        return versions;
+    }
+
+    public String getStoredContent(PageVersion version) {
+        return pageContentRepository.findContent(version.getId());
+    }
+
+    public void addError(Site site, Exception e) {
+        site.setLastError(e.getClass().getSimpleName().concat(" ").concat(String.valueOf(e.getMessage())));
+        site.setStatus(Status.FAILED);
+        siteRepository.save(site);
     }
 
     public Document addOrUpdatePage(Site site, String url) {
-        String path = url.substring(site.getUrl().length() - 1);
-        if(!pageRepository.findByPathAndSite(path, site).isPresent()) {
+        String path = getPath(site, url);
+        if(!pageRepository.existsByPathAndSite(path, site)) {
             return addPage(site, url);
         } else {
             return updatePage(site, url, path);
         }
     }
 
+    private Document addPage(Site site, String url) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(crawlScheduler.reserve(url));
+            Connection.Response connectionResponse = getConnectionResponse(url);
+            Document document = connectionResponse.parse();
+            savePages(site, List.of(parsePage(site, url, connectionResponse.statusCode(), document,
+                    connectionResponse.header("ETag"), connectionResponse.header("Last-Modified"), null)));
+            return document;
+        } catch (InterruptedException | IOException e) {
+            addError(site, e);
+        }
+        return null;
+    }
+
     private Document updatePage (Site site, String url, String path) {
         try {
             Connection.Response connectionResponse = getConnectionResponse(url);
             Document document = connectionResponse.parse();
+            ParsedPage parsedPage = parsePage(site, url, connectionResponse.statusCode(), document,
+                    connectionResponse.header("ETag"), connectionResponse.header("Last-Modified"), null);
             Page page = pageRepository.findByPathAndSite(path, site).get();
-            page.setPath(path);
-            page.setContent(document.toString());
-            page.setCode(connectionResponse.statusCode());
+            setPageContent(page, parsedPage);
             pageRepository.save(page);
-            if (page.getCode() < 400) {
-                addRussianLemmas(document, site, page);
-            }
+            saveContents(List.of(page), List.of(parsedPage));
+            pageStatistics.setPageLength(site, page.getId(), page.getTokenCount());
+            updateLemmas(site, List.of(page), List.of(parsedPage));
+            indexGeneration.increment(site);
             site.setStatusTime(LocalDateTime.now());
             siteRepository.save(site);
+            return document;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
 
-        return null;
+    /**
+     * Deletes pages with their postings and takes them out of the lemma frequencies.
+     */
+    public void removePages(Site site, Collection<Long> pageIds) {
+        if (pageIds.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Long>> removedLemmaIds = new HashMap<>();
+        Map<Long, Integer> removedFrequencies = new HashMap<>();
+        Map<String, Integer> removedTextFrequencies = new HashMap<>();
+        indexStore.findPageLemmas(site, pageIds).forEach((pageId, lemmas) -> {
+            List<Long> removed = new ArrayList<>();
+            lemmas.forEach((text, lemma) -> {
+                removed.add(lemma.lemmaId());
+                removedFrequencies.merge(lemma.lemmaId(), 1, Integer::sum);
+                removedTextFrequencies.merge(text, 1, Integer::sum);
+            });
+            removedLemmaIds.put(pageId, removed);
+        });
+        indexStore.updatePages(site, removedLemmaIds, Map.of(), Map.of());
+        indexBatchRepository.decrementLemmas(removedFrequencies);
+        lemmaDictionary.subtract(site, removedTextFrequencies);
+        indexBatchRepository.deletePages(pageIds);
+        pageIds.forEach(pageId -> pageStatistics.setPageLength(site, pageId, 0));
+        indexGeneration.increment(site);
+    }
+
+    private Map<String, Integer> collectLemmas(Site site, PageText pageText) {
+        Set<Analyzer> analyzers = lemmaAnalyzer.getAnalyzers(site);
+        HashMap<String, Integer> lemmas = lemmaAnalyzer.collectLemmas(pageText.text(), analyzers);
+        lemmaAnalyzer.collectLemmas(pageText.title(), analyzers)
+                .forEach((lemma, count) -> lemmas.merge(lemma, count * searchSettings.getTitleBoost(), Integer::sum));
+        lemmaAnalyzer.collectLemmas(pageText.description(), analyzers)
+                .forEach((lemma, count) -> lemmas.merge(lemma, count * searchSettings.getDescriptionBoost(), Integer::sum));
+        return lemmas;
+    }
+
+    private void insertPages(Site site, List<ParsedPage> parsedPages) {
+        if (parsedPages.isEmpty()) {
+            return;
+        }
+        List<Page> pages = new ArrayList<>();
+        for (ParsedPage parsedPage : parsedPages) {
+            Page page = new Page();
+            page.setSite(site);
+            setPageContent(page, parsedPage);
+            pages.add(page);
+        }
+        pageRepository.saveAll(pages);
+        saveContents(pages, parsedPages);
+        pages.forEach(page -> pageStatistics.setPageLength(site, page.getId(), page.getTokenCount()));
+        addLemmas(site, pages, parsedPages);
+        indexGeneration.increment(site);
+    }
+
+    private void updatePages(Site site, List<ParsedPage> parsedPages) {
+        if (parsedPages.isEmpty()) {
+            return;
+        }
+        Map<Long, Page> storedPages = new HashMap<>();
+        pageRepository.findAllById(parsedPages.stream().map(ParsedPage::id).toList())
+                .forEach(page -> storedPages.put(page.getId(), page));
+        List<Page> pages = new ArrayList<>();
+        List<ParsedPage> foundPages = new ArrayList<>();
+        for (ParsedPage parsedPage : parsedPages) {
+            Page page = storedPages.get(parsedPage.id());
+            if (page != null) {
+                setPageContent(page, parsedPage);
+                pages.add(page);
+                foundPages.add(parsedPage);
+            }
+        }
+        pageRepository.saveAll(pages);
+        saveContents(pages, foundPages);
+        pages.forEach(page -> pageStatistics.setPageLength(site, page.getId(), page.getTokenCount()));
+        updateLemmas(site, pages, foundPages);
+        indexGeneration.increment(site);
     }
 
-    public void addRussianLemmas(Document document, Site site, Page page) throws IOException {
+    private void addLemmas(Site site, List<Page> pages, List<ParsedPage> parsedPages) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        parsedPages.forEach(parsedPage -> parsedPage.lemmas().keySet()
+                .forEach(lemma -> frequencies.merge(lemma, 1, Integer::sum)));
+        if (frequencies.isEmpty()) {
+            return;
+        }
 
-        RussianLemmaFinder russianLemmaFinder = new RussianLemmaFinder();
-        HashMap<String, Integer> lemmas = russianLemmaFinder.collectLemmas(document.toString());
+        Map<String, Long> lemmaIds = indexBatchRepository.upsertLemmas(site, frequencies);
+        lemmaDictionary.add(site, lemmaIds, frequencies);
+        Map<Long, Map<Long, Integer>> pageLemmaRanks = new LinkedHashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            Map<Long, Integer> lemmaRanks = new HashMap<>();
+            parsedPages.get(i).lemmas().forEach((lemmaText, rank) -> lemmaRanks.put(lemmaIds.get(lemmaText), rank));
+            pageLemmaRanks.put(pages.get(i).getId(), lemmaRanks);
+        }
+        indexStore.addPages(site, pageLemmaRanks);
+    }
 
-        List<Lemma> lemmasForDataBase = new ArrayList<>();
-        List<Index> indexesForDataBase = new ArrayList<>();
-        synchronized (lemmaRepository) {
-            for (String lemmaText : lemmas.keySet()) {
-                if (IndexingServiceImpl.isCanceled()) {
-                    break;
+    /**
+     * Applies only the difference between the stored and the new lemmas of the pages.
+     */
+    private void updateLemmas(Site site, List<Page> pages, List<ParsedPage> parsedPages) {
+        Map<Long, Map<String, IndexedLemma>> storedLemmas =
+                indexStore.findPageLemmas(site, pages.stream().map(Page::getId).toList());
+        Map<Long, List<Long>> removedLemmaIds = new HashMap<>();
+        Map<Long, Integer> removedFrequencies = new HashMap<>();
+        Map<String, Integer> removedTextFrequencies = new HashMap<>();
+        Map<Long, Map<Long, Integer>> changedRanks = new HashMap<>();
+        Map<String, Integer> addedFrequencies = new HashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            Map<String, IndexedLemma> stored = storedLemmas.get(pages.get(i).getId());
+            Map<String, Integer> lemmas = parsedPages.get(i).lemmas();
+            List<Long> removed = new ArrayList<>();
+            Map<Long, Integer> ranks = new HashMap<>();
+            stored.forEach((text, lemma) -> {
+                Integer rank = lemmas.get(text);
+                if (rank == null) {
+                    removed.add(lemma.lemmaId());
+                    removedFrequencies.merge(lemma.lemmaId(), 1, Integer::sum);
+                    removedTextFrequencies.merge(text, 1, Integer::sum);
+                } else if (rank != lemma.rank()) {
+                    ranks.put(lemma.lemmaId(), rank);
                 }
-                Lemma lemma;
-                Optional<Lemma> lemmaOrNull = lemmaRepository.findByTextAndSite(lemmaText, site);
-                if (lemmaOrNull.isPresent()) {
-                    lemma = lemmaOrNull.get();
-                    lemma.setFrequency(lemma.getFrequency() + 1);
-                } else {
-                    lemma = new Lemma();
-                    lemma.setSite(site);
-                    lemma.setFrequency(1);
-                    lemma.setText(lemmaText);
+            });
+            lemmas.keySet().stream().filter(text -> !stored.containsKey(text))
+                    .forEach(text -> addedFrequencies.merge(text, 1, Integer::sum));
+            removedLemmaIds.put(pages.get(i).getId(), removed);
+            changedRanks.put(pages.get(i).getId(), ranks);
+        }
+
+        Map<String, Long> lemmaIds = indexBatchRepository.upsertLemmas(site, addedFrequencies);
+        lemmaDictionary.add(site, lemmaIds, addedFrequencies);
+        Map<Long, Map<Long, Integer>> addedRanks = new HashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            Map<String, IndexedLemma> stored = storedLemmas.get(pages.get(i).getId());
+            Map<Long, Integer> ranks = new HashMap<>();
+            parsedPages.get(i).lemmas().forEach((text, rank) -> {
+                if (!stored.containsKey(text)) {
+                    ranks.put(lemmaIds.get(text), rank);
                 }
-                lemmasForDataBase.add(lemma);
-                indexesForDataBase.add(addIndex(lemma, page, lemmas.get(lemmaText)));
+            });
+            addedRanks.put(pages.get(i).getId(), ranks);
+        }
+        indexStore.updatePages(site, removedLemmaIds, changedRanks, addedRanks);
+        indexBatchRepository.decrementLemmas(removedFrequencies);
+        lemmaDictionary.subtract(site, removedTextFrequencies);
+    }
+
+    private void saveContents(List<Page> pages, List<ParsedPage> parsedPages) {
+        Map<Long, PageBody> contents = new LinkedHashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            contents.put(pages.get(i).getId(), new PageBody(parsedPages.get(i).content(), parsedPages.get(i).text().text()));
+        }
+        pageContentRepository.saveAll(contents);
+    }
+
+    private void setPageContent(Page page, ParsedPage parsedPage) {
+        page.setPath(parsedPage.path());
+        page.setCode(parsedPage.code());
+        page.setTitle(parsedPage.text().title());
+        page.setDescription(parsedPage.text().description());
+        page.setTokenCount(parsedPage.lemmas().values().stream().mapToInt(Integer::intValue).sum());
+        page.setEtag(parsedPage.etag());
+        page.setLastModified(parsedPage.lastModified());
+        page.setContentHash(parsedPage.contentHash());
+    }
+
+    private static String getContentHash(PageText pageText) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : List.of(pageText.title(), pageText.description(), pageText.text())) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
             }
-            lemmaRepository.saveAll(lemmasForDataBase);
-            indexRepository.saveAll(indexesForDataBase);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
-    private Index addIndex (Lemma lemma,Page page, int rank) {
-        Index index = new Index();
-        index.setPage(page);
-        index.setLemma(lemma);
-        index.setRank(rank);
-        return index;
+    static String getPath(Site site, String url) {
+        return url.substring(site.getUrl().length() - 1);
     }
 
     public static String getCorrectUrlFormat (String url) {
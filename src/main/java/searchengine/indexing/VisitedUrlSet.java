@@ -0,0 +1,106 @@
+package searchengine.indexing;
+
+/**
+ * Set of already scheduled URLs that keeps only a 64-bit fingerprint per URL.
+ */
+public class VisitedUrlSet {
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final long EMPTY = 0L;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public VisitedUrlSet() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return true if the URL was not in the set before this call
+     */
+    public boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        return segments[(int) (fingerprint >>> 58) & (SEGMENT_COUNT - 1)].add(fingerprint);
+    }
+
+    public boolean contains(String url) {
+        long fingerprint = fingerprint(url);
+        return segments[(int) (fingerprint >>> 58) & (SEGMENT_COUNT - 1)].contains(fingerprint);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private static class Segment {
+        private long[] table = new long[64];
+        private int size;
+
+        synchronized boolean add(long fingerprint) {
+            int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == fingerprint) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+            if (++size * 4 > table.length * 3) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == fingerprint) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] oldTable = table;
+            table = new long[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (long fingerprint : oldTable) {
+                if (fingerprint == EMPTY) {
+                    continue;
+                }
+                int slot = (int) fingerprint & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = fingerprint;
+            }
+        }
+    }
+}
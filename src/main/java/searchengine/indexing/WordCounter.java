@@ -0,0 +1,108 @@
+package searchengine.indexing;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Open addressing map from a word to its number of occurrences.
+ */
+public class WordCounter implements WordTokenizer.TokenHandler {
+
+    private String[] words = new String[64];
+    private int[] hashes = new int[64];
+    private int[] counts = new int[64];
+    private int size;
+
+    @Override
+    public void onToken(char[] buffer, int length, int start, int end) {
+        add(buffer, length, 1);
+    }
+
+    public void add(char[] buffer, int length, int count) {
+        int hash = hash(buffer, length);
+        int mask = words.length - 1;
+        int slot = hash & mask;
+        while (words[slot] != null) {
+            if (hashes[slot] == hash && equals(words[slot], buffer, length)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        words[slot] = new String(buffer, 0, length);
+        hashes[slot] = hash;
+        counts[slot] = count;
+        if (++size * 2 > words.length) {
+            resize();
+        }
+    }
+
+    /**
+     * @return count of the word, 0 when it was never added
+     */
+    public int get(char[] buffer, int length) {
+        int hash = hash(buffer, length);
+        int mask = words.length - 1;
+        int slot = hash & mask;
+        while (words[slot] != null) {
+            if (hashes[slot] == hash && equals(words[slot], buffer, length)) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(ObjIntConsumer<String> consumer) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != null) {
+                consumer.accept(words[i], counts[i]);
+            }
+        }
+    }
+
+    private void resize() {
+        String[] oldWords = words;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        words = new String[oldWords.length * 2];
+        hashes = new int[words.length];
+        counts = new int[words.length];
+        int mask = words.length - 1;
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] == null) {
+                continue;
+            }
+            int slot = oldHashes[i] & mask;
+            while (words[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            words[slot] = oldWords[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    private static int hash(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String word, char[] buffer, int length) {
+        if (word.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
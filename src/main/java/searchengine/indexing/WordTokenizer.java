@@ -0,0 +1,101 @@
+package searchengine.indexing;
+
+import java.util.Arrays;
+
+/**
+ * Single pass tokenizer that splits text into lower-case words, ё is folded into е.
+ */
+public final class WordTokenizer {
+
+    private static final int MAX_WORD_LENGTH = 255;
+    private static final int SEPARATOR = 0;
+    private static final int CYRILLIC = 1;
+    private static final int LATIN = 2;
+
+    private WordTokenizer() {
+    }
+
+    public interface TokenHandler {
+        void onToken(char[] buffer, int length, int start, int end);
+
+        /**
+         * @return whether the handler needs no more tokens of the text
+         */
+        default boolean isDone() {
+            return false;
+        }
+    }
+
+    public static void tokenize(CharSequence text, TokenHandler handler) {
+        tokenize(text, false, handler);
+    }
+
+    public static void tokenize(CharSequence text, boolean latin, TokenHandler handler) {
+        char[] buffer = new char[32];
+        int length = 0;
+        int start = 0;
+        int script = SEPARATOR;
+        for (int i = 0; i < text.length(); i++) {
+            char letter = toLowerCase(text.charAt(i));
+            int letterScript = getScript(letter, latin);
+            if (letterScript != script && length > 0) {
+                emit(handler, buffer, length, start, i);
+                length = 0;
+                if (handler.isDone()) {
+                    return;
+                }
+            }
+            script = letterScript;
+            if (letterScript == SEPARATOR) {
+                continue;
+            }
+            if (length == 0) {
+                start = i;
+            }
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, length * 2);
+            }
+            buffer[length++] = letter;
+        }
+        if (length > 0) {
+            emit(handler, buffer, length, start, text.length());
+        }
+    }
+
+    /**
+     * @return whether the lower-case word came from a run of а-я
+     */
+    public static boolean isCyrillic(CharSequence word) {
+        char first = word.charAt(0);
+        return first >= 'а' && first <= 'я';
+    }
+
+    private static int getScript(char letter, boolean latin) {
+        if (letter >= 'а' && letter <= 'я') {
+            return CYRILLIC;
+        }
+        if (latin && ((letter >= 'a' && letter <= 'z') || (letter >= '0' && letter <= '9'))) {
+            return LATIN;
+        }
+        return SEPARATOR;
+    }
+
+    private static void emit(TokenHandler handler, char[] buffer, int length, int start, int end) {
+        if (length <= MAX_WORD_LENGTH) {
+            handler.onToken(buffer, length, start, end);
+        }
+    }
+
+    private static char toLowerCase(char letter) {
+        if (letter >= 'А' && letter <= 'Я') {
+            return (char) (letter + ('а' - 'А'));
+        }
+        if (letter == 'ё' || letter == 'Ё') {
+            return 'е';
+        }
+        if (letter >= 'A' && letter <= 'Z') {
+            return (char) (letter + ('a' - 'A'));
+        }
+        return letter;
+    }
+}
@@ -8,16 +8,17 @@ import javax.persistence.*;
 @Getter
 @Setter
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "site_text", columnNames = {"site_id", "text"}))
 public class Lemma {
     @Id
-    @GeneratedValue (strategy = GenerationType.AUTO)
+    @GeneratedValue (strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", nullable = false)
     private Site site;
 
-    @Column(name = "text", columnDefinition = "VARCHAR(255) NOT NULL, KEY text_index(text(255))" )
+    @Column(name = "text", columnDefinition = "VARCHAR(255) COLLATE utf8mb4_bin NOT NULL")
     private String text;
 
     @Column(nullable = false)
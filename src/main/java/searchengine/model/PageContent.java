@@ -0,0 +1,27 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Deflate-compressed HTML and extracted text of a page, kept apart from {@link Page}.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "page_content")
+public class PageContent {
+
+    @Id
+    @Column(name = "page_id")
+    private Long pageId;
+
+    @Column(columnDefinition = "MEDIUMBLOB", nullable = false)
+    private byte[] content;
+
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String text;
+
+}
@@ -0,0 +1,190 @@
+package searchengine.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.Site;
+
+import java.util.*;
+
+@Repository
+@RequiredArgsConstructor
+public class IndexBatchRepository {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int DEADLOCK_RETRIES = 3;
+    private static final int DELETE_PAGE_CHUNK = 100;
+    private static final int DELETE_LEMMA_CHUNK = 10_000;
+
+    private static final String UPSERT_LEMMA = "INSERT INTO lemma (site_id, text, frequency) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)";
+    private static final String SELECT_LEMMA_IDS = "SELECT id, text FROM lemma WHERE site_id = :site_id AND text IN (:texts)";
+    private static final String SELECT_LEMMA_TEXTS = "SELECT id, text FROM lemma WHERE id IN (:ids)";
+    private static final String INSERT_INDEX = "INSERT INTO index_table (page_id, lemma_id, index_rank) VALUES (?, ?, ?)";
+    private static final String SELECT_PAGE_LEMMAS = "SELECT i.page_id, i.lemma_id, l.text, i.index_rank " +
+            "FROM index_table i JOIN lemma l ON l.id = i.lemma_id WHERE i.page_id IN (:page_ids)";
+    private static final String UPDATE_INDEX = "UPDATE index_table SET index_rank = ? WHERE page_id = ? AND lemma_id = ?";
+    private static final String DELETE_INDEX = "DELETE FROM index_table WHERE page_id = ? AND lemma_id = ?";
+    private static final String DECREMENT_LEMMA = "UPDATE lemma SET frequency = frequency - ? WHERE id = ?";
+    private static final String DELETE_UNUSED_LEMMAS = "DELETE FROM lemma WHERE site_id = ? AND frequency <= 0 LIMIT ?";
+    private static final String SELECT_SITE_PAGE_IDS = "SELECT id FROM page WHERE site_id = ? ORDER BY id LIMIT ?";
+    private static final String DELETE_PAGE_INDEXES = "DELETE FROM index_table WHERE page_id IN (:page_ids)";
+    private static final String DELETE_PAGE_CONTENTS = "DELETE FROM page_content WHERE page_id IN (:page_ids)";
+    private static final String DELETE_PAGES = "DELETE FROM page WHERE id IN (:page_ids)";
+    private static final String DELETE_SITE_LEMMAS = "DELETE FROM lemma WHERE site_id = ? LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Adds the given page counts to the lemma frequencies, every chunk is one transaction.
+     */
+    public Map<String, Long> upsertLemmas(Site site, Map<String, Integer> frequencies) {
+        List<String> sortedTexts = new ArrayList<>(frequencies.keySet());
+        Collections.sort(sortedTexts);
+        Map<String, Long> lemmaIds = new HashMap<>();
+        for (List<String> chunk : chunks(sortedTexts)) {
+            upsertChunk(site, chunk, frequencies);
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("site_id", site.getId())
+                    .addValue("texts", chunk);
+            namedParameterJdbcTemplate.query(SELECT_LEMMA_IDS, parameters, (RowCallbackHandler) resultSet ->
+                    lemmaIds.put(resultSet.getString(2), resultSet.getLong(1)));
+        }
+        return lemmaIds;
+    }
+
+    public void insertIndexes(Map<Long, Map<Long, Integer>> pageLemmaRanks) {
+        List<Object[]> rows = new ArrayList<>();
+        pageLemmaRanks.forEach((pageId, lemmaRanks) ->
+                lemmaRanks.forEach((lemmaId, rank) -> rows.add(new Object[]{pageId, lemmaId, rank})));
+        for (List<Object[]> chunk : chunks(rows)) {
+            jdbcTemplate.batchUpdate(INSERT_INDEX, chunk);
+        }
+    }
+
+    /**
+     * @return lemmas of every given page by lemma text
+     */
+    public Map<Long, Map<String, IndexedLemma>> findPageLemmas(Collection<Long> pageIds) {
+        Map<Long, Map<String, IndexedLemma>> pageLemmas = new HashMap<>();
+        pageIds.forEach(pageId -> pageLemmas.put(pageId, new HashMap<>()));
+        for (List<Long> chunk : chunks(new ArrayList<>(pageIds))) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource("page_ids", chunk);
+            namedParameterJdbcTemplate.query(SELECT_PAGE_LEMMAS, parameters, (RowCallbackHandler) resultSet ->
+                    pageLemmas.get(resultSet.getLong(1)).put(resultSet.getString(3),
+                            new IndexedLemma(resultSet.getLong(2), Math.round(resultSet.getFloat(4)))));
+        }
+        return pageLemmas;
+    }
+
+    public Map<Long, String> findLemmaTexts(Collection<Long> lemmaIds) {
+        Map<Long, String> texts = new HashMap<>();
+        for (List<Long> chunk : chunks(new ArrayList<>(lemmaIds))) {
+            namedParameterJdbcTemplate.query(SELECT_LEMMA_TEXTS, new MapSqlParameterSource("ids", chunk),
+                    (RowCallbackHandler) resultSet -> texts.put(resultSet.getLong(1), resultSet.getString(2)));
+        }
+        return texts;
+    }
+
+    public void updateIndexes(Map<Long, Map<Long, Integer>> pageLemmaRanks) {
+        List<Object[]> rows = new ArrayList<>();
+        pageLemmaRanks.forEach((pageId, lemmaRanks) ->
+                lemmaRanks.forEach((lemmaId, rank) -> rows.add(new Object[]{rank, pageId, lemmaId})));
+        for (List<Object[]> chunk : chunks(rows)) {
+            jdbcTemplate.batchUpdate(UPDATE_INDEX, chunk);
+        }
+    }
+
+    public void deleteIndexes(Map<Long, ? extends Collection<Long>> pageLemmaIds) {
+        List<Object[]> rows = new ArrayList<>();
+        pageLemmaIds.forEach((pageId, lemmaIds) -> lemmaIds.forEach(lemmaId -> rows.add(new Object[]{pageId, lemmaId})));
+        for (List<Object[]> chunk : chunks(rows)) {
+            jdbcTemplate.batchUpdate(DELETE_INDEX, chunk);
+        }
+    }
+
+    /**
+     * Subtracts the given page counts from lemma frequencies, see {@link #deleteUnusedLemmas}.
+     */
+    public void decrementLemmas(Map<Long, Integer> frequencies) {
+        List<Long> sortedIds = new ArrayList<>(frequencies.keySet());
+        Collections.sort(sortedIds);
+        for (List<Long> chunk : chunks(sortedIds)) {
+            List<Object[]> rows = new ArrayList<>(chunk.size());
+            chunk.forEach(id -> rows.add(new Object[]{frequencies.get(id), id}));
+            jdbcTemplate.batchUpdate(DECREMENT_LEMMA, rows);
+        }
+    }
+
+    /**
+     * Deletes lemmas of the site no page contains anymore. Runs after a crawl, when no page of the site is written.
+     */
+    public void deleteUnusedLemmas(Site site) {
+        int deletedLemmas;
+        do {
+            deletedLemmas = jdbcTemplate.update(DELETE_UNUSED_LEMMAS, site.getId(), DELETE_LEMMA_CHUNK);
+        } while (deletedLemmas == DELETE_LEMMA_CHUNK);
+    }
+
+    public void deletePages(Collection<Long> pageIds) {
+        for (List<Long> chunk : chunks(new ArrayList<>(pageIds))) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource("page_ids", chunk);
+            namedParameterJdbcTemplate.update(DELETE_PAGE_INDEXES, parameters);
+            namedParameterJdbcTemplate.update(DELETE_PAGE_CONTENTS, parameters);
+            namedParameterJdbcTemplate.update(DELETE_PAGES, parameters);
+        }
+    }
+
+    /**
+     * Deletes index rows, pages with their content and lemmas of the site in small chunks.
+     */
+    public void deleteSiteData(Site site) {
+        List<Long> pageIds;
+        do {
+            pageIds = jdbcTemplate.queryForList(SELECT_SITE_PAGE_IDS, Long.class, site.getId(), DELETE_PAGE_CHUNK);
+            if (!pageIds.isEmpty()) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource("page_ids", pageIds);
+                namedParameterJdbcTemplate.update(DELETE_PAGE_INDEXES, parameters);
+                namedParameterJdbcTemplate.update(DELETE_PAGE_CONTENTS, parameters);
+                namedParameterJdbcTemplate.update(DELETE_PAGES, parameters);
+            }
+        } while (pageIds.size() == DELETE_PAGE_CHUNK);
+        int deletedLemmas;
+        do {
+            deletedLemmas = jdbcTemplate.update(DELETE_SITE_LEMMAS, site.getId(), DELETE_LEMMA_CHUNK);
+        } while (deletedLemmas == DELETE_LEMMA_CHUNK);
+    }
+
+    private void upsertChunk(Site site, List<String> chunk, Map<String, Integer> frequencies) {
+        List<Object[]> rows = new ArrayList<>(chunk.size());
+        chunk.forEach(text -> rows.add(new Object[]{site.getId(), text, frequencies.get(text)}));
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_LEMMA, rows));
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt == DEADLOCK_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static <T> List<List<T>> chunks(List<T> list) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += BATCH_SIZE) {
+            chunks.add(list.subList(i, Math.min(list.size(), i + BATCH_SIZE)));
+        }
+        return chunks;
+    }
+
+    public record IndexedLemma(long lemmaId, int rank) {
+    }
+}
@@ -0,0 +1,7 @@
+package searchengine.repositories;
+
+public interface LemmaFrequency {
+    Long getId();
+    String getText();
+    Integer getFrequency();
+}
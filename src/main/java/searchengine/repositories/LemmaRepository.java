@@ -5,13 +5,7 @@ import org.springframework.stereotype.Repository;
 import searchengine.model.Lemma;
 import searchengine.model.Site;
 
-import javax.transaction.Transactional;
-import java.util.List;
-import java.util.Optional;
 @Repository
 public interface LemmaRepository extends JpaRepository<Lemma,Long> {
-    Optional<Lemma> findByTextAndSite(String lemma, Site site);
     int countBySite (Site site);
-    @Transactional
-    Integer deleteAllBySite (Site site);
 }
@@ -0,0 +1,182 @@
+package searchengine.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import searchengine.config.SearchSettings;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores page HTML compressed with Deflate and the extracted page text in page_content, one row per page.
+ */
+@Repository
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class PageContentRepository {
+
+    private static final int BATCH_SIZE = 100;
+    private static final String CONTENT_COLUMN = "content";
+    private static final String TEXT_COLUMN = "text";
+
+    private static final String UPSERT_CONTENT = "INSERT INTO page_content (page_id, content) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE content = VALUES(content)";
+    private static final String UPSERT_TEXT = "INSERT INTO page_content (page_id, content, text) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE text = VALUES(text)";
+    private static final String UPSERT_PAGE = "INSERT INTO page_content (page_id, content, text) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE content = VALUES(content), text = VALUES(text)";
+    private static final String SELECT_CONTENT = "SELECT content FROM page_content WHERE page_id = ?";
+    private static final String LEGACY_COLUMNS = "SELECT column_name, is_nullable FROM information_schema.columns " +
+            "WHERE table_schema = DATABASE() AND table_name = 'page' AND column_name IN ('content', 'text')";
+    private static final String SELECT_LEGACY = "SELECT id, %s FROM page WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String COUNT_LEGACY = "SELECT COUNT(*) FROM page WHERE %s IS NOT NULL";
+    private static final String COUNT_MOVED = "SELECT COUNT(*) FROM page p JOIN page_content c ON c.page_id = p.id " +
+            "WHERE p.%1$s IS NOT NULL AND c.%1$s IS NOT NULL";
+    private static final String ALLOW_LEGACY_NULL = "ALTER TABLE page MODIFY %s MEDIUMTEXT NULL";
+    private static final String DROP_LEGACY = "ALTER TABLE page DROP COLUMN %s";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchSettings searchSettings;
+    private final Logger logger = LogManager.getRootLogger();
+
+    /**
+     * Moves page.content and page.text of pages stored before page_content held them when
+     * search-settings.migrate-page-columns is set, otherwise only lets new pages leave them empty.
+     */
+    @PostConstruct
+    public void migrateLegacyColumns() {
+        Map<String, Boolean> legacyColumns = new LinkedHashMap<>();
+        jdbcTemplate.query(LEGACY_COLUMNS, (RowCallbackHandler) resultSet ->
+                legacyColumns.put(resultSet.getString(1).toLowerCase(Locale.ROOT), "YES".equals(resultSet.getString(2))));
+        if (legacyColumns.isEmpty()) {
+            return;
+        }
+        if (!searchSettings.isMigratePageColumns()) {
+            legacyColumns.forEach((column, nullable) -> {
+                if (!nullable) {
+                    jdbcTemplate.execute(String.format(ALLOW_LEGACY_NULL, column));
+                }
+            });
+            logger.warn("Columns " + legacyColumns.keySet() + " of page are not moved to page_content, " +
+                    "set search-settings.migrate-page-columns to move them");
+            return;
+        }
+        for (String column : List.of(CONTENT_COLUMN, TEXT_COLUMN)) {
+            if (legacyColumns.containsKey(column)) {
+                migrateLegacyColumn(column);
+            }
+        }
+    }
+
+    /**
+     * Saves the HTML of pages whose text did not change.
+     */
+    public void updateContents(Map<Long, String> pageContents) {
+        List<Object[]> rows = new ArrayList<>();
+        pageContents.forEach((pageId, content) -> rows.add(new Object[]{pageId, compress(content)}));
+        batchUpdate(UPSERT_CONTENT, rows);
+    }
+
+    public void saveAll(Map<Long, PageBody> pageBodies) {
+        List<Object[]> rows = new ArrayList<>();
+        pageBodies.forEach((pageId, body) -> rows.add(new Object[]{pageId, compress(body.content()), body.text()}));
+        batchUpdate(UPSERT_PAGE, rows);
+    }
+
+    /**
+     * @return page HTML, empty when the page has none stored
+     */
+    public String findContent(long pageId) {
+        List<byte[]> contents = jdbcTemplate.query(SELECT_CONTENT, (resultSet, row) -> resultSet.getBytes(1), pageId);
+        return contents.isEmpty() ? "" : decompress(contents.get(0));
+    }
+
+    /**
+     * Copies the column in chunks and drops it only when every non-null value reached page_content.
+     */
+    private void migrateLegacyColumn(String column) {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int count;
+        do {
+            TreeMap<Long, String> chunk = new TreeMap<>();
+            jdbcTemplate.query(String.format(SELECT_LEGACY, column), (RowCallbackHandler) resultSet ->
+                    chunk.put(resultSet.getLong(1), resultSet.getString(2)), lastId, BATCH_SIZE);
+            if (column.equals(CONTENT_COLUMN)) {
+                updateContents(chunk);
+            } else {
+                List<Object[]> rows = new ArrayList<>();
+                chunk.forEach((pageId, text) -> rows.add(new Object[]{pageId, compress(""), text}));
+                batchUpdate(UPSERT_TEXT, rows);
+            }
+            count = chunk.size();
+            lastId = count == 0 ? lastId : chunk.lastKey();
+        } while (count == BATCH_SIZE);
+        Long legacyCount = jdbcTemplate.queryForObject(String.format(COUNT_LEGACY, column), Long.class);
+        Long movedCount = jdbcTemplate.queryForObject(String.format(COUNT_MOVED, column), Long.class);
+        if (!Objects.equals(legacyCount, movedCount)) {
+            logger.error("Only " + movedCount + " of " + legacyCount + " values of page." + column +
+                    " are in page_content, the column is kept");
+            return;
+        }
+        jdbcTemplate.execute(String.format(DROP_LEGACY, column));
+        logger.info("Column page." + column + " moved to page_content in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(i, Math.min(rows.size(), i + BATCH_SIZE)));
+        }
+    }
+
+    private static byte[] compress(String content) {
+        Deflater deflater = new Deflater();
+        try {
+            byte[] input = content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String decompress(byte[] content) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(content);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated page content");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public record PageBody(String content, String text) {
+    }
+}
@@ -1,19 +1,29 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.Page;
 import searchengine.model.Site;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PageRepository extends JpaRepository<Page,Long> {
     Optional<Page> findByPathAndSite (String path, Site site);
-    int countBySite (Site site);
+    boolean existsByPathAndSite (String path, Site site);
+    @Query("SELECT p.id AS id, p.path AS path, p.title AS title, p.description AS description, c.text AS text " +
+            "FROM Page p LEFT JOIN PageContent c ON c.pageId = p.id WHERE p.id IN :ids")
+    List<PageSummary> findByIdIn (@Param("ids") Collection<Long> ids);
+    List<PageVersion> findVersionsBySite (Site site);
     @Transactional
-    Integer deleteAllBySite(Site site);
+    @Modifying
+    @Query("UPDATE Page p SET p.etag = :etag, p.lastModified = :lastModified WHERE p.id = :id")
+    void updateValidators (@Param("id") long id, @Param("etag") String etag, @Param("lastModified") String lastModified);
+    int countBySite (Site site);
 }
@@ -0,0 +1,9 @@
+package searchengine.repositories;
+
+public interface PageSummary {
+    Long getId();
+    String getPath();
+    String getTitle();
+    String getDescription();
+    String getText();
+}
@@ -0,0 +1,10 @@
+package searchengine.repositories;
+
+public interface PageVersion {
+    Long getId();
+    String getPath();
+    Integer getCode();
+    String getEtag();
+    String getLastModified();
+    String getContentHash();
+}
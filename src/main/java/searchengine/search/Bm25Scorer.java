@@ -0,0 +1,49 @@
+package searchengine.search;
+
+import searchengine.config.SearchSettings;
+import searchengine.indexing.PageStatistics;
+import searchengine.indexing.PostingList;
+import searchengine.model.Site;
+import searchengine.repositories.LemmaFrequency;
+
+import java.util.List;
+
+/**
+ * BM25 score of the query lemmas of one site.
+ */
+public class Bm25Scorer implements PostingList.Scorer {
+
+    private final double k1;
+    private final double b;
+    private final double averageLength;
+    private final double[] idf;
+    private final PageStatistics pageStatistics;
+    private final Site site;
+
+    public Bm25Scorer(SearchSettings searchSettings, PageStatistics pageStatistics, Site site, List<LemmaFrequency> lemmas) {
+        this.k1 = searchSettings.getBm25K1();
+        this.b = searchSettings.getBm25B();
+        this.pageStatistics = pageStatistics;
+        this.site = site;
+        int pageCount = pageStatistics.getPageCount(site);
+        this.averageLength = Math.max(1, pageStatistics.getAverageLength(site));
+        this.idf = new double[lemmas.size()];
+        for (int i = 0; i < idf.length; i++) {
+            int frequency = lemmas.get(i).getFrequency();
+            idf[i] = Math.max(0, Math.log(1 + (pageCount - frequency + 0.5) / (frequency + 0.5)));
+        }
+    }
+
+    /**
+     * @return upper bound of the score of the lemma, reached as the term frequency grows
+     */
+    public double getMaxScore(int list) {
+        return idf[list] * (k1 + 1);
+    }
+
+    @Override
+    public double score(int list, int pageId, int rank) {
+        double lengthNorm = 1 - b + b * pageStatistics.getPageLength(site, pageId) / averageLength;
+        return idf[list] * rank * (k1 + 1) / (rank + k1 * lengthNorm);
+    }
+}
@@ -0,0 +1,83 @@
+package searchengine.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.indexing.IndexStore;
+import searchengine.indexing.PageStatistics;
+import searchengine.indexing.PostingList;
+import searchengine.model.Site;
+import searchengine.repositories.LemmaFrequency;
+
+import java.util.List;
+
+/**
+ * Evaluates a query over one site, frequent lemmas only score the pages (MaxScore).
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryEvaluator {
+
+    private final IndexStore indexStore;
+    private final PageStatistics pageStatistics;
+    private final SearchSettings searchSettings;
+
+    /**
+     * @param lemmas lemmas of the query sorted by frequency
+     * @return number of pages matching all required lemmas
+     */
+    public int evaluate(Site site, List<LemmaFrequency> lemmas, TopPages topPages) {
+        if (lemmas.isEmpty()) {
+            return 0;
+        }
+        Bm25Scorer scorer = new Bm25Scorer(searchSettings, pageStatistics, site, lemmas);
+        int required = getRequiredCount(site, lemmas);
+
+        PostingList.Intersection matches = indexStore.getPostings(site, lemmas.get(0).getId()).score(0, scorer);
+        for (int i = 1; i < required && matches.size() > 0; i++) {
+            matches = indexStore.getPostings(site, lemmas.get(i).getId()).retain(matches, i, scorer);
+        }
+
+        int optional = lemmas.size() - required;
+        double[] remainingMaxScores = new double[optional + 1];
+        for (int j = optional - 1; j >= 0; j--) {
+            remainingMaxScores[j] = remainingMaxScores[j + 1] + scorer.getMaxScore(required + j);
+        }
+        PostingList.Cursor[] cursors = new PostingList.Cursor[optional];
+        for (int i = 0; i < matches.size(); i++) {
+            int pageId = matches.pageIds()[i];
+            double score = matches.scores()[i];
+            for (int j = 0; j < optional && !isBelowThreshold(topPages, score + remainingMaxScores[j]); j++) {
+                if (cursors[j] == null) {
+                    cursors[j] = indexStore.getPostings(site, lemmas.get(required + j).getId()).cursor();
+                }
+                if (cursors[j].advance(pageId) && cursors[j].pageId() == pageId) {
+                    score += scorer.score(required + j, pageId, cursors[j].rank());
+                }
+            }
+            if (!isBelowThreshold(topPages, score)) {
+                topPages.add(new RankedPage(site, pageId, score));
+            }
+        }
+        return matches.size();
+    }
+
+    /**
+     * The rarest lemma stays required even when all of them are frequent.
+     */
+    private int getRequiredCount(Site site, List<LemmaFrequency> lemmas) {
+        double maxFrequency = searchSettings.getFrequentLemmaShare() * pageStatistics.getPageCount(site);
+        int required = 1;
+        while (required < lemmas.size() && lemmas.get(required).getFrequency() <= maxFrequency) {
+            required++;
+        }
+        return required;
+    }
+
+    /**
+     * A page that cannot exceed the current minimum can never get in.
+     */
+    private static boolean isBelowThreshold(TopPages topPages, double maxScore) {
+        return topPages.isFull() && maxScore <= topPages.getMinRelevance();
+    }
+}
@@ -0,0 +1,6 @@
+package searchengine.search;
+
+import searchengine.model.Site;
+
+public record RankedPage(Site site, int pageId, double relevance) {
+}
@@ -0,0 +1,58 @@
+package searchengine.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.stereotype.Component;
+import searchengine.config.Analyzer;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.SearchResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+@Component
+public class SearchResultCache {
+
+    private final Cache<Key, SearchResponse> cache;
+
+    public SearchResultCache(SearchSettings searchSettings) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(searchSettings.getResultCacheSize())
+                .expireAfterWrite(searchSettings.getResultCacheTtl())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Searches outside of the cache, so a slow search never blocks writes of other keys.
+     */
+    public SearchResponse get(Key key, Supplier<SearchResponse> search) {
+        SearchResponse response = cache.getIfPresent(key);
+        if (response == null) {
+            response = search.get();
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Identifies a result page by the searched sites together with their index generations.
+     */
+    public record Key(List<SiteGeneration> sites, Map<Set<Analyzer>, List<Set<String>>> wordLemmas,
+                      int offset, int limit) {
+    }
+
+    public record SiteGeneration(long siteId, long generation) {
+    }
+}
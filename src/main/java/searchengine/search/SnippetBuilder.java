@@ -0,0 +1,204 @@
+package searchengine.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.Analyzer;
+import searchengine.indexing.LemmaAnalyzer;
+import searchengine.indexing.WordCounter;
+import searchengine.indexing.WordTokenizer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Highlights the window of the page text holding the most distinct query lemmas.
+ */
+@Component
+@RequiredArgsConstructor
+public class SnippetBuilder {
+
+    private static final int SNIPPET_LENGTH = 240;
+    private static final int MAX_WINDOW_MATCHES = SNIPPET_LENGTH / 2 + 1;
+    private static final int NO_MATCH = -1;
+
+    private final LemmaAnalyzer lemmaAnalyzer;
+
+    /**
+     * @return the best fragment of the first field that contains a query lemma
+     */
+    public String build(String query, Set<String> queryLemmas, Set<Analyzer> analyzers, String... fields) {
+        LemmaMatcher matcher = new LemmaMatcher(query, queryLemmas, analyzers);
+        for (String field : fields) {
+            if (field == null || field.isEmpty()) {
+                continue;
+            }
+            WindowFinder finder = new WindowFinder(matcher);
+            lemmaAnalyzer.tokenize(field, analyzers, finder);
+            if (finder.bestDistinct > 0) {
+                return highlight(field, finder.bestStart, finder.bestEnd, matcher);
+            }
+        }
+        for (String field : fields) {
+            if (field != null && !field.isEmpty()) {
+                return highlight(field, 0, 0, matcher);
+            }
+        }
+        return "";
+    }
+
+    private String highlight(String text, int matchStart, int matchEnd, LemmaMatcher matcher) {
+        int from = Math.max(0, matchStart - Math.max(0, SNIPPET_LENGTH - (matchEnd - matchStart)) / 2);
+        int to = Math.max(matchEnd, Math.min(text.length(), from + SNIPPET_LENGTH));
+        from = Math.max(0, Math.min(from, to - SNIPPET_LENGTH));
+        while (from > 0 && from < matchStart && !Character.isWhitespace(text.charAt(from - 1))) {
+            from++;
+        }
+        while (to < text.length() && to > matchEnd && !Character.isWhitespace(text.charAt(to))) {
+            to--;
+        }
+
+        StringBuilder snippet = new StringBuilder(to - from + 32);
+        if (from > 0) {
+            snippet.append("... ");
+        }
+        int[] position = {0};
+        String fragment = text.substring(from, to);
+        lemmaAnalyzer.tokenize(fragment, matcher.analyzers, (buffer, length, start, end) -> {
+            if (matcher.match(buffer, length) < 0) {
+                return;
+            }
+            appendEscaped(snippet, fragment, position[0], start);
+            snippet.append("<b>");
+            appendEscaped(snippet, fragment, start, end);
+            snippet.append("</b>");
+            position[0] = end;
+        });
+        appendEscaped(snippet, fragment, position[0], fragment.length());
+        if (to < text.length()) {
+            snippet.append(" ...");
+        }
+        return snippet.toString();
+    }
+
+    private static int getPrefix(char[] buffer, int length) {
+        return buffer[0] << 16 | (length > 1 ? buffer[1] : 0);
+    }
+
+    private static void appendEscaped(StringBuilder snippet, String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char symbol = text.charAt(i);
+            switch (symbol) {
+                case '<' -> snippet.append("&lt;");
+                case '>' -> snippet.append("&gt;");
+                case '&' -> snippet.append("&amp;");
+                default -> snippet.append(symbol);
+            }
+        }
+    }
+
+    private class WindowFinder implements WordTokenizer.TokenHandler {
+        private final LemmaMatcher matcher;
+        private final int[] lemmaCounts;
+        private final int[] starts = new int[MAX_WINDOW_MATCHES];
+        private final int[] lemmas = new int[MAX_WINDOW_MATCHES];
+        private int head;
+        private int count;
+        private int distinct;
+
+        private int bestDistinct;
+        private int bestMatches;
+        private int bestStart;
+        private int bestEnd;
+
+        WindowFinder(LemmaMatcher matcher) {
+            this.matcher = matcher;
+            this.lemmaCounts = new int[matcher.lemmaIndexes.size()];
+        }
+
+        /**
+         * A window with every query lemma cannot be beaten on distinct lemmas, the rest of the text is skipped.
+         */
+        @Override
+        public boolean isDone() {
+            return bestDistinct == lemmaCounts.length;
+        }
+
+        @Override
+        public void onToken(char[] buffer, int length, int start, int end) {
+            int lemma = matcher.match(buffer, length);
+            if (lemma < 0) {
+                return;
+            }
+            while (count > 0 && end - starts[head] > SNIPPET_LENGTH) {
+                if (--lemmaCounts[lemmas[head]] == 0) {
+                    distinct--;
+                }
+                head = (head + 1) % MAX_WINDOW_MATCHES;
+                count--;
+            }
+            int tail = (head + count) % MAX_WINDOW_MATCHES;
+            starts[tail] = start;
+            lemmas[tail] = lemma;
+            count++;
+            if (lemmaCounts[lemma]++ == 0) {
+                distinct++;
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && count > bestMatches)) {
+                bestDistinct = distinct;
+                bestMatches = count;
+                bestStart = starts[head];
+                bestEnd = end;
+            }
+        }
+    }
+
+    /**
+     * Looks up the lemmas of a token only when it starts like a query word or lemma, once per distinct token.
+     */
+    private class LemmaMatcher {
+        private final Map<String, Integer> lemmaIndexes = new HashMap<>();
+        private final Set<Analyzer> analyzers;
+        private final int[] prefixes;
+        private final WordCounter matches = new WordCounter();
+
+        LemmaMatcher(String query, Set<String> queryLemmas, Set<Analyzer> analyzers) {
+            this.analyzers = analyzers;
+            Set<Integer> queryPrefixes = new HashSet<>();
+            queryLemmas.forEach(lemma -> {
+                lemmaIndexes.put(lemma, lemmaIndexes.size());
+                if (!lemma.isEmpty()) {
+                    queryPrefixes.add(getPrefix(lemma.toCharArray(), lemma.length()));
+                }
+            });
+            lemmaAnalyzer.tokenize(query, analyzers,
+                    (buffer, length, start, end) -> queryPrefixes.add(getPrefix(buffer, length)));
+            prefixes = queryPrefixes.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        /**
+         * @return index of the query lemma of the token or -1
+         */
+        int match(char[] buffer, int length) {
+            if (Arrays.binarySearch(prefixes, getPrefix(buffer, length)) < 0) {
+                return NO_MATCH;
+            }
+            int cached = matches.get(buffer, length);
+            if (cached > 0) {
+                return cached - 2;
+            }
+            int index = NO_MATCH;
+            for (String normalForm : lemmaAnalyzer.getNormalForms(new String(buffer, 0, length), analyzers)) {
+                Integer lemmaIndex = lemmaIndexes.get(normalForm);
+                if (lemmaIndex != null) {
+                    index = lemmaIndex;
+                    break;
+                }
+            }
+            matches.add(buffer, length, index + 2);
+            return index;
+        }
+    }
+}
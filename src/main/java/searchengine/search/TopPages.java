@@ -0,0 +1,57 @@
+package searchengine.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k most relevant pages seen so far in a min-heap.
+ */
+public class TopPages {
+
+    private static final Comparator<RankedPage> byRelevance = Comparator
+            .comparingDouble(RankedPage::relevance)
+            .thenComparing(Comparator.comparingInt(RankedPage::pageId).reversed());
+
+    private final int capacity;
+    private final PriorityQueue<RankedPage> heap;
+
+    public TopPages(int capacity) {
+        this.capacity = capacity;
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(capacity, 1024)), byRelevance);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {
+        return heap.size() >= capacity;
+    }
+
+    /**
+     * @return relevance a page has to exceed to get in once the heap is full
+     */
+    public double getMinRelevance() {
+        return heap.isEmpty() ? Double.NEGATIVE_INFINITY : heap.peek().relevance();
+    }
+
+    public void add(RankedPage page) {
+        if (capacity == 0) {
+            return;
+        }
+        if (heap.size() < capacity) {
+            heap.add(page);
+        } else if (byRelevance.compare(page, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(page);
+        }
+    }
+
+    public List<RankedPage> getSortedPages() {
+        List<RankedPage> pages = new ArrayList<>(heap);
+        pages.sort(byRelevance.reversed());
+        return pages;
+    }
+}
@@ -1,7 +1,9 @@
 package searchengine.services;
 
 import searchengine.dto.search.SearchResponse;
+import searchengine.dto.search.SuggestResponse;
 
 public interface SearchService {
-    SearchResponse startSearch(String query, String url);
+    SearchResponse startSearch(String query, String url, int offset, int limit);
+    SuggestResponse suggest(String query, String url, int limit);
 }
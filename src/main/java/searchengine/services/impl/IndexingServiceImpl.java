@@ -1,28 +1,26 @@
 package searchengine.services.impl;
 
 import lombok.RequiredArgsConstructor;
-import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import searchengine.config.ConnectionData;
+import searchengine.config.CrawlSettings;
 import searchengine.config.SitesList;
 import searchengine.dto.indexing.IndexingResponse;
-import searchengine.indexing.PageIndexer;
+import searchengine.indexing.CrawlPipeline;
+import searchengine.indexing.IndexStore;
+import searchengine.indexing.LemmaDictionary;
+import searchengine.indexing.PageStatistics;
 import searchengine.indexing.SiteInformationAdder;
-import searchengine.model.Page;
 import searchengine.model.Site;
 import searchengine.model.Status;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
+import searchengine.repositories.IndexBatchRepository;
 import searchengine.repositories.SiteRepository;
 import searchengine.services.IndexingService;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ForkJoinPool;
+import java.util.Set;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -30,19 +28,18 @@ import org.apache.logging.log4j.Logger;
 @Service
 @RequiredArgsConstructor
 public class IndexingServiceImpl implements IndexingService {
-    private static final int numberOfCores = Runtime.getRuntime().availableProcessors();
     @Autowired
     private SiteRepository siteRepository;
     @Autowired
-    private PageRepository pageRepository;
-    @Autowired
-    private IndexRepository indexRepository;
-    @Autowired
-    private LemmaRepository lemmaRepository;
+    private IndexBatchRepository indexBatchRepository;
     private final SitesList sites;
-    private final ConnectionData connectionData;
+    private final CrawlSettings crawlSettings;
+    private final SiteInformationAdder siteInformationAdder;
+    private final IndexStore indexStore;
+    private final CrawlPipeline crawlPipeline;
+    private final PageStatistics pageStatistics;
+    private final LemmaDictionary lemmaDictionary;
     private static ArrayList<Thread> threads = new ArrayList<>();
-    private ArrayList<ForkJoinPool> pools = new ArrayList<>();
     private static volatile boolean isCanceled = false;
 
     public static boolean isCanceled() {
@@ -55,7 +52,6 @@ public class IndexingServiceImpl implements IndexingService {
             return getFalseResponse("Индексация уже запущена");
         }
         threads.clear();
-        pools.clear();
         for (int i = 0; i < sites.getSites().size(); i++) {
             int threadNumber = i;
             Runnable task = () -> {
@@ -74,29 +70,41 @@ public class IndexingServiceImpl implements IndexingService {
         if (!checkThreadIsAlive()) {
             return getFalseResponse("Индексация не запущена");
         }
-        pools.forEach(ForkJoinPool::shutdownNow);
         isCanceled = true;
-        for (ForkJoinPool pool : pools) {
-            while (pool.isTerminating()) {}
+        crawlPipeline.cancel();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
         threads.clear();
-        pools.clear();
         isCanceled = false;
         siteRepository.findAll().forEach(this::addSiteFailedStatus);
         return getTrueResponse();
     }
 
     private void indexSite(String url, String name) {
-        if (siteRepository.findByUrl(url).isPresent()) {
-            url = deleteSiteInformation(url);
+        Site site;
+        if (crawlSettings.isIncremental() && siteRepository.findByUrl(url).isPresent()) {
+            site = siteRepository.findByUrl(url).get();
+            site.setStatus(Status.INDEXING);
+            site.setLastError(null);
+            site.setStatusTime(LocalDateTime.now());
+            siteRepository.save(site);
+        } else {
+            if (siteRepository.findByUrl(url).isPresent()) {
+                url = deleteSiteInformation(url);
+            }
+            site = addNewSite(url, name, Status.INDEXING);
+        }
+        Set<Long> unreachedPageIds = crawlPipeline.crawl(site, url).join();
+        if (!site.getStatus().equals(Status.FAILED) && !isCanceled) {
+            siteInformationAdder.removePages(site, unreachedPageIds);
+            indexBatchRepository.deleteUnusedLemmas(site);
         }
-        Site site = addNewSite(url, name, Status.INDEXING);
-        ForkJoinPool forkJoinPool = new ForkJoinPool(numberOfCores);
-        pools.add(forkJoinPool);
-        String pages = forkJoinPool.invoke(new PageIndexer(
-                new SiteInformationAdder(siteRepository, pageRepository, indexRepository, lemmaRepository, connectionData),
-                site, url, new CopyOnWriteArrayList<>()));
-        if (!site.getStatus().equals(Status.FAILED)) {
+        if (!site.getStatus().equals(Status.FAILED) && !isCanceled) {
             site.setStatus(Status.INDEXED);
             site.setStatusTime(LocalDateTime.now());
             siteRepository.save(site);
@@ -124,8 +132,7 @@ public class IndexingServiceImpl implements IndexingService {
             return getFalseResponse("Данная страница находится за пределами сайтов, указанных в конфигурационном файле");
         }
         Site site = getSiteForOnePageIndexing(url, siteUrl, siteName);
-        var siteInfo = new SiteInformationAdder(siteRepository, pageRepository, indexRepository, lemmaRepository, connectionData);
-        Document page = siteInfo.addOrUpdatePage(site,url);
+        siteInformationAdder.addOrUpdatePage(site,url);
         return getTrueResponse();
     }
 
@@ -158,8 +165,10 @@ public class IndexingServiceImpl implements IndexingService {
 
     private String deleteSiteInformation (String url) {
         Site siteForDelete = siteRepository.findByUrl(url).get();
-        pageRepository.deleteAllBySite(siteForDelete);
-        lemmaRepository.deleteAllBySite(siteForDelete);
+        indexBatchRepository.deleteSiteData(siteForDelete);
+        indexStore.removeSite(siteForDelete);
+        pageStatistics.removeSite(siteForDelete);
+        lemmaDictionary.removeSite(siteForDelete);
         siteRepository.delete(siteForDelete);
         return url;
     }
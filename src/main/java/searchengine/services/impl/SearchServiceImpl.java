@@ -1,31 +1,35 @@
 package searchengine.services.impl;
 
 import lombok.RequiredArgsConstructor;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import searchengine.config.Analyzer;
+import searchengine.config.SearchSettings;
 import searchengine.dto.search.SearchData;
 import searchengine.dto.search.SearchResponse;
-import searchengine.indexing.RussianLemmaFinder;
-import searchengine.model.Index;
-import searchengine.model.Lemma;
-import searchengine.model.Page;
+import searchengine.dto.search.SuggestResponse;
+import searchengine.indexing.IndexGeneration;
+import searchengine.indexing.LemmaAnalyzer;
+import searchengine.indexing.LemmaDictionary;
+import searchengine.indexing.WordTokenizer;
 import searchengine.model.Site;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.LemmaFrequency;
 import searchengine.repositories.PageRepository;
+import searchengine.repositories.PageSummary;
 import searchengine.repositories.SiteRepository;
+import searchengine.search.QueryEvaluator;
+import searchengine.search.RankedPage;
+import searchengine.search.SearchResultCache;
+import searchengine.search.SnippetBuilder;
+import searchengine.search.TopPages;
 import searchengine.services.SearchService;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 
-
-import java.io.IOException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @RequiredArgsConstructor
@@ -35,174 +39,208 @@ public class SearchServiceImpl implements SearchService {
     @Autowired
     private PageRepository pageRepository;
     @Autowired
-    private LemmaRepository lemmaRepository;
+    private LemmaAnalyzer lemmaAnalyzer;
+    @Autowired
+    private SearchSettings searchSettings;
+    @Autowired
+    private SearchResultCache searchResultCache;
+    @Autowired
+    private IndexGeneration indexGeneration;
     @Autowired
-    private IndexRepository indexRepository;
+    private SnippetBuilder snippetBuilder;
+    @Autowired
+    private QueryEvaluator queryEvaluator;
+    @Autowired
+    private LemmaDictionary lemmaDictionary;
+    private ExecutorService searchExecutor;
 
-    private RussianLemmaFinder russianLemmaFinder;
-    private final Logger logger = LogManager.getRootLogger();
+    @PostConstruct
+    public void startExecutor() {
+        searchExecutor = Executors.newFixedThreadPool(searchSettings.getSearchThreads());
+    }
 
-    {
-        try {
-            russianLemmaFinder = new RussianLemmaFinder();
-        } catch (IOException e) {
-            logger.error(e.getMessage());;
-        }
+    @PreDestroy
+    public void stopExecutor() {
+        searchExecutor.shutdownNow();
     }
 
     @Override
-    public SearchResponse startSearch(String query, String url) {
+    public SearchResponse startSearch(String query, String url, int offset, int limit) {
         SearchResponse response = new SearchResponse();
         if (query.isBlank()) {
             response.setResult(false);
             response.setError("Задан пустой поисковый запрос");
             return response;
         }
-        List<SearchData> data = getSearchData(query, url);
-        response.setResult(true);
-        response.setData(data);
-        response.setCount(data.size());
-        return response;
+        if (offset < 0 || limit < 1) {
+            response.setResult(false);
+            response.setError("Некорректные параметры offset или limit");
+            return response;
+        }
+        List<Site> siteList = getSiteList(url);
+        Map<Set<Analyzer>, List<Set<String>>> wordLemmas = new HashMap<>();
+        Set<String> queryLemmas = new HashSet<>();
+        siteList.forEach(site -> wordLemmas.computeIfAbsent(lemmaAnalyzer.getAnalyzers(site), analyzers -> {
+            List<Set<String>> lemmaSets = lemmaAnalyzer.getWordLemmaSets(query, analyzers);
+            lemmaSets.forEach(queryLemmas::addAll);
+            return lemmaSets;
+        }));
+        SearchResultCache.Key key = new SearchResultCache.Key(siteList.stream()
+                .map(site -> new SearchResultCache.SiteGeneration(site.getId(), indexGeneration.get(site)))
+                .toList(), Map.copyOf(wordLemmas), offset, limit);
+        return searchResultCache.get(key, () -> search(query, siteList, wordLemmas, queryLemmas, offset, limit));
     }
 
-    private List<SearchData> getSearchData(String query, String url) {
-        List<SearchData> data = new ArrayList<>();
-        List<Site> siteList = new ArrayList<>();
-        if (url.isEmpty()) {
-            siteList = siteRepository.findAll();
-        } else {
-            siteList.add(siteRepository.findByUrl(url).get());
+    /**
+     * Completes the last word of the query as the tokenizer normalizes it, or offers the closest lemmas when none
+     * starts with it.
+     */
+    @Override
+    public SuggestResponse suggest(String query, String url, int limit) {
+        SuggestResponse response = new SuggestResponse();
+        StringBuilder lastWord = new StringBuilder();
+        WordTokenizer.tokenize(query, true, (buffer, length, start, end) -> {
+            lastWord.setLength(0);
+            lastWord.append(buffer, 0, length);
+        });
+        String prefix = lastWord.toString();
+        if (prefix.isEmpty()) {
+            response.setResult(false);
+            response.setError("Задан пустой запрос");
+            return response;
         }
-        for (Site site : siteList) {
-            List<Lemma> queryLemmas = getSortedExistingLemmaList(russianLemmaFinder.getLemmaSet(query), site);
-            List<Page> pages = findPagesByQueryLemmas(queryLemmas);
-            for (Page page : pages) {
-                data.add(getPageData(page, site, query, queryLemmas));
-            }
+        if (limit < 1) {
+            response.setResult(false);
+            response.setError("Некорректный параметр limit");
+            return response;
         }
-        Collections.sort(data, (o1, o2) -> o2.getRelevance().compareTo(o1.getRelevance()));
-        return data;
-    }
-
-
-    private List<Lemma> getSortedExistingLemmaList(Set<String> lemmasSet, Site site) {
-        List<Lemma> lemmas = new ArrayList<>();
-        for (String lemma : lemmasSet) {
-            if (lemmaRepository.findByTextAndSite(lemma, site).isPresent())
-                lemmas.add(lemmaRepository.findByTextAndSite(lemma, site).get());
+        List<Site> siteList = getSiteList(url);
+        Map<String, Integer> frequencies = new HashMap<>();
+        siteList.forEach(site -> lemmaDictionary.complete(site, prefix, limit)
+                .forEach(lemma -> frequencies.merge(lemma.getText(), lemma.getFrequency(), Integer::sum)));
+        if (frequencies.isEmpty()) {
+            siteList.forEach(site -> lemmaDictionary.findSimilar(site, prefix, getMaxEdits(prefix), limit)
+                    .forEach(lemma -> frequencies.merge(lemma.getText(), lemma.getFrequency(), Integer::sum)));
         }
-        Collections.sort(lemmas, Comparator.comparing(Lemma::getFrequency));
-        return lemmas;
+        response.setResult(true);
+        response.setSuggestions(frequencies.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList());
+        return response;
     }
 
-    private SearchData getPageData(Page page, Site site, String query, List<Lemma> lemmas) {
-        SearchData pageData = new SearchData();
-        pageData.setSite(site.getUrl());
-        pageData.setUri(page.getPath());
-        pageData.setSiteName(site.getName());
-        String html = page.getContent();
-        pageData.setTitle(Jsoup.parse(html).title());
-        pageData.setSnippet(addSnippet(html, query));
-        pageData.setRelevance(indexRepository.findIndexRank(page, lemmas).stream().mapToInt(Integer::intValue).sum());
-        return pageData;
+    private List<Site> getSiteList(String url) {
+        if (url.isEmpty()) {
+            return siteRepository.findAll();
+        }
+        List<Site> siteList = new ArrayList<>();
+        siteList.add(siteRepository.findByUrl(url).get());
+        return siteList;
     }
 
-    private String addSnippet(String html, String query) {
-        List<String> queryArray = Arrays.stream(query.trim().toLowerCase().split("\\s+"))
-                .filter(i -> !russianLemmaFinder.checkWordIsParticle(i)).toList();
-        StringBuilder snippet = new StringBuilder();
-        Document doc = Jsoup.parse(html);
-        String description = addDescription(doc, queryArray);
-        snippet.append(description.concat(" ... "));
-        String keyWords = addKeyWords(doc,queryArray,snippet.length());
-        snippet.append(keyWords);
-        String additionalWords = addSomeWords(html,queryArray,snippet.length());
-        snippet.append(additionalWords);
-        return snippet.toString();
+    private SearchResponse search(String query, List<Site> siteList, Map<Set<Analyzer>, List<Set<String>>> wordLemmas,
+                                  Set<String> queryLemmas, int offset, int limit) {
+        TopPages topPages = new TopPages((int) Math.min(Integer.MAX_VALUE, (long) offset + limit));
+        int count = rankPages(siteList, wordLemmas, topPages);
+        List<RankedPage> rankedPages = topPages.getSortedPages();
+        double maxRelevance = rankedPages.isEmpty() ? 0 : rankedPages.get(0).relevance();
+        List<SearchData> data = getSearchData(rankedPages.subList(Math.min(offset, rankedPages.size()),
+                rankedPages.size()), query, queryLemmas, maxRelevance);
+        SearchResponse response = new SearchResponse();
+        response.setResult(true);
+        response.setData(data);
+        response.setCount(count);
+        return response;
     }
 
-    private List<Page> findPagesByQueryLemmas(List<Lemma> lemmas) {
-        if (lemmas.isEmpty()) {
-            return new ArrayList<>();
-        }
-        List<Page> pages = getPageList(lemmas.get(0));
-        for (int i = 1; i < lemmas.size(); i++) {
-            List<Page> temporaryPages = getPageList(lemmas.get(i));
-            pages.retainAll(temporaryPages);
+    /**
+     * Every site is searched with the lemmas of the query in its own analyzer chain.
+     */
+    private int rankPages(List<Site> siteList, Map<Set<Analyzer>, List<Set<String>>> wordLemmas, TopPages topPages) {
+        List<CompletableFuture<SiteMatches>> siteMatches = siteList.stream()
+                .map(site -> CompletableFuture.supplyAsync(() ->
+                        rankSitePages(site, wordLemmas.get(lemmaAnalyzer.getAnalyzers(site)), topPages.getCapacity()), searchExecutor))
+                .toList();
+        int count = 0;
+        for (CompletableFuture<SiteMatches> future : siteMatches) {
+            SiteMatches matches = future.join();
+            count += matches.count();
+            matches.topPages().getSortedPages().forEach(topPages::add);
         }
-        return pages;
+        return count;
     }
 
-    private List<Page> getPageList(Lemma lemma) {
-        return indexRepository.findAllByLemma(lemma)
-                .stream()
-                .map(Index::getPage)
-                .collect(Collectors.toList());
+    private SiteMatches rankSitePages(Site site, List<Set<String>> wordLemmas, int capacity) {
+        List<LemmaFrequency> lemmas = getSortedExistingLemmaList(wordLemmas, site);
+        TopPages topPages = new TopPages(capacity);
+        int count = queryEvaluator.evaluate(site, lemmas, topPages);
+        return new SiteMatches(topPages, count);
     }
 
-    private String addDescription (Document doc, List<String> queryArray) {
-        Elements elements = doc.getElementsByAttributeValue("name", "description");
-        if (elements.isEmpty()) {
-            return "";
+    private List<SearchData> getSearchData(List<RankedPage> rankedPages, String query, Set<String> queryLemmas,
+                                           double maxRelevance) {
+        List<Long> pageIds = rankedPages.stream().map(rankedPage -> (long) rankedPage.pageId()).toList();
+        Map<Long, PageSummary> pages = new HashMap<>();
+        pageRepository.findByIdIn(pageIds).forEach(page -> pages.put(page.getId(), page));
+        List<SearchData> data = new ArrayList<>();
+        for (RankedPage rankedPage : rankedPages) {
+            PageSummary page = pages.get((long) rankedPage.pageId());
+            if (page != null) {
+                data.add(getPageData(page, rankedPage, query, queryLemmas, maxRelevance));
+            }
         }
-        String description = elements.get(0).attr("content");
-        return markInBold(description, queryArray);
+        return data;
     }
 
-    private String addKeyWords(Document doc, List<String> queryArray, int length) {
-        StringBuilder keyWords = new StringBuilder();
-        Elements elements = doc.select("a");
-        for (Element e : elements) {
-            if (length + keyWords.length() > 220) {
-                break;
+    /**
+     * A word none of whose normal forms the site has is replaced by the closest lemma of the site.
+     */
+    private List<LemmaFrequency> getSortedExistingLemmaList(List<Set<String>> wordLemmas, Site site) {
+        Map<Long, LemmaFrequency> lemmas = new LinkedHashMap<>();
+        for (Set<String> forms : wordLemmas) {
+            boolean found = false;
+            for (String form : forms) {
+                LemmaFrequency lemmaFrequency = lemmaDictionary.get(site, form);
+                if (lemmaFrequency != null) {
+                    lemmas.put(lemmaFrequency.getId(), lemmaFrequency);
+                    found = true;
+                }
             }
-            String text = e.text().toLowerCase();
-            if (queryArray.stream().anyMatch(x -> text.contains(x))) {
-                keyWords.append(markInBold(text, queryArray).concat(" ... "));
+            for (Iterator<String> iterator = forms.iterator(); !found && iterator.hasNext(); ) {
+                String form = iterator.next();
+                for (LemmaFrequency similar : lemmaDictionary.findSimilar(site, form, getMaxEdits(form), 1)) {
+                    lemmas.put(similar.getId(), similar);
+                    found = true;
+                }
             }
         }
-        return keyWords.toString();
+        List<LemmaFrequency> sortedLemmas = new ArrayList<>(lemmas.values());
+        sortedLemmas.sort(Comparator.comparing(LemmaFrequency::getFrequency));
+        return sortedLemmas;
     }
 
-    private String addSomeWords (String html, List<String> queryArray, int length) {
-        html = html.toLowerCase()
-                .replaceAll("([^а-я\\s])", " ")
-                .replaceAll("\\s+", " ").trim();
-        StringBuilder someWords = new StringBuilder();
-        for (int i = 0; i < queryArray.size(); i++) {
-            if (length + someWords.length() > 220) {
-                break;
-            }
-            String word = queryArray.get(i);
-            int wordIndex = html.indexOf(word);
-
-            if (wordIndex == -1) {
-                continue;
-            }
-            int start = (wordIndex - 20) > 20 ? (wordIndex - 20) : wordIndex;
-            int finish = start + 51 > html.length() ? html.length() - 1 : start + 50;
-            someWords.append(html, start, wordIndex);
-            someWords.append("<b>");
-            someWords.append(word);
-            someWords.append("</b>");
-            someWords.append(html, wordIndex + word.length(), finish);
-            someWords.append(" ... ");
-        }
-        return someWords.toString();
+    /**
+     * Short words get fewer edits, so they are not expanded into unrelated ones.
+     */
+    private int getMaxEdits(String text) {
+        return Math.min(searchSettings.getFuzzyMaxEdits(), text.length() / 4);
     }
 
-    private String markInBold (String text, List<String> queryArray) {
-        List<String> wordArray = new ArrayList<>();
-        for (String s : (text.split("\\s+"))) {
-            wordArray.add(s);
-        }
-        for (int i = 0; i < wordArray.size(); i++) {
-            String word = wordArray.get(i);
-            if (queryArray.stream().anyMatch(queryWord -> word.startsWith(queryWord))) {
-                wordArray.set(i, "<b>".concat(word).concat("</b>"));
-            }
-        }
-        return String.join(" ", wordArray);
+    private SearchData getPageData(PageSummary page, RankedPage rankedPage, String query, Set<String> queryLemmas,
+                                   double maxRelevance) {
+        SearchData pageData = new SearchData();
+        pageData.setSite(rankedPage.site().getUrl());
+        pageData.setUri(page.getPath());
+        pageData.setSiteName(rankedPage.site().getName());
+        pageData.setTitle(page.getTitle());
+        pageData.setSnippet(snippetBuilder.build(query, queryLemmas, lemmaAnalyzer.getAnalyzers(rankedPage.site()),
+                page.getText(), page.getDescription()));
+        pageData.setRelevance(maxRelevance > 0 ? (float) (rankedPage.relevance() / maxRelevance) : 1);
+        return pageData;
     }
 
+    private record SiteMatches(TopPages topPages, int count) {
+    }
 }
@@ -1,19 +1,26 @@
 package searchengine.services.impl;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.SitesList;
+import searchengine.dto.statistics.CacheStatistics;
 import searchengine.dto.statistics.DetailedStatisticsItem;
+import searchengine.dto.statistics.PipelineStatistics;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
+import searchengine.indexing.CrawlPipeline;
+import searchengine.indexing.EnglishLemmaFinder;
+import searchengine.indexing.RussianLemmaFinder;
 import searchengine.indexing.SiteInformationAdder;
 import searchengine.model.Site;
 import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.search.SearchResultCache;
 import searchengine.services.StatisticsService;
 
 import java.time.ZoneId;
@@ -32,6 +39,10 @@ public class StatisticsServiceImpl implements StatisticsService {
     @Autowired
     private LemmaRepository lemmaRepository;
     private final SitesList sites;
+    private final RussianLemmaFinder russianLemmaFinder;
+    private final EnglishLemmaFinder englishLemmaFinder;
+    private final SearchResultCache searchResultCache;
+    private final CrawlPipeline crawlPipeline;
     private int siteCount;
 
     @Override
@@ -40,6 +51,8 @@ public class StatisticsServiceImpl implements StatisticsService {
         StatisticsData data = new StatisticsData();
         data.setTotal(getTotal());
         data.setDetailed(getDetailed());
+        data.setCaches(getCaches());
+        data.setPipeline(getPipeline());
         StatisticsResponse response = new StatisticsResponse();
         response.setStatistics(data);
         response.setResult(true);
@@ -66,6 +79,34 @@ public class StatisticsServiceImpl implements StatisticsService {
         return detailed;
     }
 
+    private List<CacheStatistics> getCaches() {
+        List<CacheStatistics> caches = new ArrayList<>();
+        caches.add(getCacheItem("lemmas", russianLemmaFinder.getCacheStats(), russianLemmaFinder.getCacheSize()));
+        caches.add(getCacheItem("english-lemmas", englishLemmaFinder.getCacheStats(), englishLemmaFinder.getCacheSize()));
+        caches.add(getCacheItem("search", searchResultCache.getStats(), searchResultCache.getSize()));
+        return caches;
+    }
+
+    private PipelineStatistics getPipeline() {
+        PipelineStatistics pipeline = new PipelineStatistics();
+        pipeline.setFrontier(crawlPipeline.getFrontierSize());
+        pipeline.setFetching(crawlPipeline.getFetching());
+        pipeline.setParseQueue(crawlPipeline.getParseQueueSize());
+        pipeline.setPersistQueue(crawlPipeline.getPersistQueueSize());
+        return pipeline;
+    }
+
+    private CacheStatistics getCacheItem(String name, CacheStats stats, long size) {
+        CacheStatistics item = new CacheStatistics();
+        item.setName(name);
+        item.setSize(size);
+        item.setHits(stats.hitCount());
+        item.setMisses(stats.missCount());
+        item.setEvictions(stats.evictionCount());
+        item.setHitRate(stats.hitRate());
+        return item;
+    }
+
     @Transactional(readOnly = true)
     public DetailedStatisticsItem getItem(String name, String url) {
         DetailedStatisticsItem item = new DetailedStatisticsItem();
@@ -0,0 +1,93 @@
+package searchengine.indexing;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import searchengine.config.Analyzer;
+import searchengine.config.SitesList;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lemma counting over stored pages through the analyzer chain against the former regex split with Russian
+ * morphology, every iteration starts with empty word caches. Run the main method on the test classpath
+ * against an indexed database given by the benchmark.* properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LemmaAnalyzerBenchmark {
+
+    private static final Set<Analyzer> RUSSIAN = EnumSet.of(Analyzer.RUSSIAN);
+    private static final Set<Analyzer> ALL = EnumSet.allOf(Analyzer.class);
+
+    private List<String> pages;
+    private RussianLemmaFinder russianLemmaFinder;
+    private LemmaAnalyzer lemmaAnalyzer;
+
+    @Setup(Level.Trial)
+    public void loadPages() throws SQLException {
+        pages = WordTokenizerBenchmark.loadPages(Integer.getInteger("benchmark.pages", 500));
+    }
+
+    @Setup(Level.Iteration)
+    public void createAnalyzer() throws IOException {
+        russianLemmaFinder = new RussianLemmaFinder();
+        lemmaAnalyzer = new LemmaAnalyzer(russianLemmaFinder, new EnglishLemmaFinder(), new SitesList());
+    }
+
+    @Benchmark
+    public int regexSplit() {
+        int lemmaCount = 0;
+        for (String page : pages) {
+            Map<String, Integer> lemmas = new HashMap<>();
+            for (String word : page.toLowerCase().replaceAll("([^а-я\\s])", " ").trim().split("\\s+")) {
+                List<String> normalForms = word.isEmpty() ? List.of() : russianLemmaFinder.getNormalForms(word);
+                if (!normalForms.isEmpty()) {
+                    lemmas.merge(normalForms.get(0), 1, Integer::sum);
+                }
+            }
+            lemmaCount += lemmas.size();
+        }
+        return lemmaCount;
+    }
+
+    @Benchmark
+    public int russianChain() {
+        return collectLemmas(RUSSIAN);
+    }
+
+    @Benchmark
+    public int fullChain() {
+        return collectLemmas(ALL);
+    }
+
+    private int collectLemmas(Set<Analyzer> analyzers) {
+        int lemmaCount = 0;
+        for (String page : pages) {
+            lemmaCount += lemmaAnalyzer.collectLemmas(page, analyzers).size();
+        }
+        return lemmaCount;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(LemmaAnalyzerBenchmark.class.getSimpleName())
+                .jvmArgsAppend(WordTokenizerBenchmark.getBenchmarkProperties())
+                .build()).run();
+        Map<String, Double> scores = new HashMap<>();
+        results.forEach(result -> scores.put(result.getParams().getBenchmark()
+                .substring(result.getParams().getBenchmark().lastIndexOf('.') + 1), result.getPrimaryResult().getScore()));
+        double regexSplit = scores.get("regexSplit");
+        System.out.printf("russianChain / regexSplit: %.2f%n", scores.get("russianChain") / regexSplit);
+        System.out.printf("fullChain / regexSplit: %.2f%n", scores.get("fullChain") / regexSplit);
+    }
+}
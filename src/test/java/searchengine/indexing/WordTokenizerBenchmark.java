@@ -0,0 +1,94 @@
+package searchengine.indexing;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Word counting over stored pages with the single pass tokenizer against the former regex split.
+ * Run the main method on the test classpath against an indexed database given by the benchmark.* properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WordTokenizerBenchmark {
+
+    private static final String PAGE_QUERY = "SELECT c.text FROM page p JOIN page_content c ON c.page_id = p.id " +
+            "WHERE p.code = 200 ORDER BY p.id LIMIT ?";
+
+    private List<String> pages;
+
+    @Setup
+    public void loadPages() throws SQLException {
+        pages = loadPages(Integer.getInteger("benchmark.pages", 500));
+    }
+
+    static List<String> loadPages(int limit) throws SQLException {
+        List<String> pages = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(
+                System.getProperty("benchmark.url", "jdbc:mysql://localhost:3306/search_engine"),
+                System.getProperty("benchmark.user", "root"),
+                System.getProperty("benchmark.password", ""));
+             PreparedStatement statement = connection.prepareStatement(PAGE_QUERY)) {
+            statement.setInt(1, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    pages.add(resultSet.getString(1));
+                }
+            }
+        }
+        if (pages.isEmpty()) {
+            throw new IllegalStateException("No stored pages, index a site first");
+        }
+        return pages;
+    }
+
+    static String[] getBenchmarkProperties() {
+        return System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith("benchmark."))
+                .map(name -> "-D" + name + "=" + System.getProperty(name))
+                .toArray(String[]::new);
+    }
+
+    @Benchmark
+    public int regexSplit() {
+        int wordCount = 0;
+        for (String page : pages) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (String word : page.toLowerCase().replaceAll("([^а-я\\s])", " ").trim().split("\\s+")) {
+                counts.merge(word, 1, Integer::sum);
+            }
+            wordCount += counts.size();
+        }
+        return wordCount;
+    }
+
+    @Benchmark
+    public int tokenizer() {
+        int wordCount = 0;
+        for (String page : pages) {
+            WordCounter counter = new WordCounter();
+            WordTokenizer.tokenize(page, counter);
+            wordCount += counter.size();
+        }
+        return wordCount;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WordTokenizerBenchmark.class.getSimpleName())
+                .jvmArgsAppend(getBenchmarkProperties())
+                .build()).run();
+    }
+}
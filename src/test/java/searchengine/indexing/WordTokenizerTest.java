@@ -0,0 +1,59 @@
+package searchengine.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WordTokenizerTest {
+
+    @Test
+    void splitsCyrillicWordsAndLowerCasesThem() {
+        assertEquals(List.of("привет", "мир"), tokens("Привет, МИР!"));
+    }
+
+    @Test
+    void foldsYoIntoYe() {
+        assertEquals(List.of("елка", "и", "еж"), tokens("Ёлка и ёж"));
+    }
+
+    @Test
+    void splitsHyphenatedWords() {
+        assertEquals(List.of("северо", "западный", "кто", "то"), tokens("северо-западный кто-то"));
+    }
+
+    @Test
+    void skipsDigitsAndLatin() {
+        assertEquals(List.of("модель", "цена", "руб"), tokens("Модель X100, цена 5990руб."));
+    }
+
+    @Test
+    void reportsTokenPositionsInSourceText() {
+        List<String> positions = new ArrayList<>();
+        WordTokenizer.tokenize(" да-нет", (buffer, length, start, end) -> positions.add(start + ":" + end));
+        assertEquals(List.of("1:3", "4:7"), positions);
+    }
+
+    @Test
+    void skipsTooLongWords() {
+        assertEquals(List.of("да"), tokens("я".repeat(256) + " да"));
+    }
+
+    @Test
+    void countsRepeatedWords() {
+        WordCounter counter = new WordCounter();
+        WordTokenizer.tokenize("Дом, дом и ДОМ", counter);
+        List<String> counts = new ArrayList<>();
+        counter.forEach((word, count) -> counts.add(word + "=" + count));
+        counts.sort(null);
+        assertEquals(List.of("дом=3", "и=1"), counts);
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        WordTokenizer.tokenize(text, (buffer, length, start, end) -> tokens.add(new String(buffer, 0, length)));
+        return tokens;
+    }
+}
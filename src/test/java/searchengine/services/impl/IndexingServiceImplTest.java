@@ -0,0 +1,88 @@
+package searchengine.services.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import searchengine.config.CrawlSettings;
+import searchengine.config.SitesList;
+import searchengine.indexing.*;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.IndexBatchRepository;
+import searchengine.repositories.SiteRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class IndexingServiceImplTest {
+
+    private final SiteRepository siteRepository = mock(SiteRepository.class);
+    private final CrawlPipeline crawlPipeline = mock(CrawlPipeline.class);
+    private final SiteInformationAdder siteInformationAdder = mock(SiteInformationAdder.class);
+    private final IndexBatchRepository indexBatchRepository = mock(IndexBatchRepository.class);
+    private final List<Site> savedSites = new ArrayList<>();
+    private final CompletableFuture<Set<Long>> crawl = new CompletableFuture<>();
+    private IndexingServiceImpl indexingService;
+
+    @BeforeEach
+    void setUp() {
+        searchengine.config.Site configSite = new searchengine.config.Site();
+        configSite.setUrl("https://www.example.ru/");
+        configSite.setName("Example");
+        SitesList sitesList = new SitesList();
+        sitesList.setSites(List.of(configSite));
+
+        when(siteRepository.findByUrl(anyString())).thenReturn(Optional.empty());
+        when(siteRepository.save(any(Site.class))).thenAnswer(invocation -> {
+            Site site = invocation.getArgument(0);
+            if (!savedSites.contains(site)) {
+                savedSites.add(site);
+            }
+            return site;
+        });
+        when(siteRepository.findAll()).thenReturn(savedSites);
+        when(crawlPipeline.crawl(any(Site.class), anyString())).thenReturn(crawl);
+        doAnswer(invocation -> crawl.complete(Set.of())).when(crawlPipeline).cancel();
+
+        indexingService = new IndexingServiceImpl(sitesList, new CrawlSettings(), siteInformationAdder,
+                mock(IndexStore.class), crawlPipeline, mock(PageStatistics.class), mock(LemmaDictionary.class));
+        ReflectionTestUtils.setField(indexingService, "siteRepository", siteRepository);
+        ReflectionTestUtils.setField(indexingService, "indexBatchRepository", indexBatchRepository);
+    }
+
+    @Test
+    void stoppedCrawlLeavesSiteFailed() {
+        indexingService.startIndexing();
+        verify(crawlPipeline, timeout(5000)).crawl(any(Site.class), anyString());
+
+        indexingService.stopIndexing();
+
+        assertEquals(1, savedSites.size());
+        assertEquals(Status.FAILED, savedSites.get(0).getStatus());
+        assertEquals("Индексация остановлена пользователем", savedSites.get(0).getLastError());
+        verify(siteInformationAdder, never()).removePages(any(), any());
+        verify(indexBatchRepository, never()).deleteUnusedLemmas(any());
+    }
+
+    @Test
+    void finishedCrawlLeavesSiteIndexed() throws InterruptedException {
+        indexingService.startIndexing();
+        verify(crawlPipeline, timeout(5000)).crawl(any(Site.class), anyString());
+
+        crawl.complete(Set.of());
+        while (IndexingServiceImpl.checkThreadIsAlive()) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(Status.INDEXED, savedSites.get(0).getStatus());
+        verify(indexBatchRepository).deleteUnusedLemmas(savedSites.get(0));
+    }
+}
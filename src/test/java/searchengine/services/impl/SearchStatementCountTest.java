@@ -0,0 +1,171 @@
+package searchengine.services.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.search.SearchResponse;
+import searchengine.indexing.LemmaDictionary;
+import searchengine.indexing.PageStatistics;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.PageVersion;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.SearchService;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Statements a search issues, counted on the data source so JdbcTemplate reads are included.
+ * The entity schema is MySQL specific so H2 gets its own.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:search;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:schema-h2.sql",
+        "search-settings.in-memory-index=false",
+        "search-settings.index-backend=database"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SearchStatementCountTest {
+
+    private static final int PAGE_COUNT = 20;
+    private static final AtomicInteger statements = new AtomicInteger();
+
+    @Autowired
+    private SearchService searchService;
+    @Autowired
+    private SiteRepository siteRepository;
+    @Autowired
+    private PageRepository pageRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private LemmaDictionary lemmaDictionary;
+    @Autowired
+    private PageStatistics pageStatistics;
+
+    private Site site;
+
+    @BeforeEach
+    void setUp() {
+        site = new Site();
+        site.setStatus(Status.INDEXED);
+        site.setStatusTime(LocalDateTime.now());
+        site.setUrl("https://www.example.ru/");
+        site.setName("Example");
+        siteRepository.save(site);
+
+        jdbcTemplate.update("INSERT INTO lemma (site_id, text, frequency) VALUES (?, ?, ?)",
+                site.getId(), "поиск", PAGE_COUNT);
+        long lemmaId = jdbcTemplate.queryForObject("SELECT id FROM lemma WHERE site_id = ?", Long.class, site.getId());
+        lemmaDictionary.add(site, Map.of("поиск", lemmaId), Map.of("поиск", PAGE_COUNT));
+
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            Page page = new Page();
+            page.setSite(site);
+            page.setPath("/page" + i);
+            page.setCode(200);
+            page.setTitle("Страница " + i);
+            page.setTokenCount(3);
+            pageRepository.save(page);
+            jdbcTemplate.update("INSERT INTO page_content (page_id, content, text) VALUES (?, ?, ?)",
+                    page.getId(), new byte[0], "поиск по сайту");
+            jdbcTemplate.update("INSERT INTO index_table (page_id, lemma_id, index_rank) VALUES (?, ?, ?)",
+                    page.getId(), lemmaId, i + 1);
+            pageStatistics.setPageLength(site, page.getId(), page.getTokenCount());
+        }
+        statements.set(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lemmaDictionary.removeSite(site);
+        pageStatistics.removeSite(site);
+        List.of("index_table", "page_content", "lemma", "page", "site")
+                .forEach(table -> jdbcTemplate.update("DELETE FROM " + table));
+    }
+
+    @Test
+    void searchReadsSitesPostingsAndPagesInOneStatementEach() {
+        SearchResponse response = searchService.startSearch("Поиск", "", 0, PAGE_COUNT);
+
+        assertTrue(response.isResult());
+        assertEquals(PAGE_COUNT, response.getCount());
+        assertEquals(PAGE_COUNT, response.getData().size());
+        assertEquals(3, statements.get());
+    }
+
+    @Test
+    void readsPageVersionsInOneStatement() {
+        List<PageVersion> versions = pageRepository.findVersionsBySite(site);
+        versions.forEach(version -> version.getPath());
+        assertEquals(PAGE_COUNT, versions.size());
+        assertEquals(1, statements.get());
+    }
+
+    @TestConfiguration
+    static class StatementCounting {
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? wrap(DataSource.class, dataSource) : bean;
+                }
+            };
+        }
+
+        /**
+         * Counts the statements of every connection, H2 rejects the MySQL streaming fetch size so it is dropped.
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> T wrap(Class<T> type, T target) {
+            ClassLoader classLoader = StatementCounting.class.getClassLoader();
+            return (T) Proxy.newProxyInstance(classLoader, new Class<?>[]{type}, (proxy, method, args) -> {
+                if (method.getName().equals("setFetchSize") && (int) args[0] < 0) {
+                    args[0] = 0;
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Connection connection && method.getName().equals("getConnection")) {
+                    return wrap(Connection.class, connection);
+                }
+                if (target instanceof Connection && (method.getName().startsWith("prepare")
+                        || method.getName().equals("createStatement"))) {
+                    statements.incrementAndGet();
+                    return wrap((Class<Object>) method.getReturnType(), result);
+                }
+                return result;
+            });
+        }
+    }
+}
@@ -0,0 +1,42 @@
+CREATE TABLE site (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status VARCHAR(16) NOT NULL,
+    status_time TIMESTAMP NOT NULL,
+    last_error VARCHAR(4096),
+    url VARCHAR(255) NOT NULL,
+    name VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE page (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    site_id BIGINT NOT NULL REFERENCES site (id),
+    path VARCHAR(2048) NOT NULL,
+    code INT NOT NULL,
+    title VARCHAR(1024),
+    description VARCHAR(4096),
+    token_count INT,
+    etag VARCHAR(255),
+    last_modified VARCHAR(64),
+    content_hash CHAR(64)
+);
+
+CREATE TABLE lemma (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    site_id BIGINT NOT NULL REFERENCES site (id),
+    text VARCHAR(255) NOT NULL,
+    frequency INT NOT NULL,
+    CONSTRAINT site_text UNIQUE (site_id, text)
+);
+
+CREATE TABLE index_table (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    page_id BIGINT NOT NULL REFERENCES page (id),
+    lemma_id BIGINT NOT NULL REFERENCES lemma (id),
+    index_rank REAL NOT NULL
+);
+
+CREATE TABLE page_content (
+    page_id BIGINT PRIMARY KEY,
+    content BLOB NOT NULL,
+    text VARCHAR(65535)
+);